@@ -0,0 +1,72 @@
+plugins {
+    java
+    id("me.champeau.jmh") version "0.7.3"
+}
+
+java {
+    toolchain {
+        languageVersion.set(JavaLanguageVersion.of(21))
+    }
+}
+
+tasks.withType<JavaCompile>().configureEach {
+    options.release.set(21)
+}
+
+repositories {
+    mavenCentral()
+    maven("https://repo.spongepowered.org/maven/")
+    maven("https://repo.leavesmc.org/releases/")
+    maven("https://repo.leavesmc.org/snapshots/")
+    maven("https://repo.menthamc.org/repository/maven-public/")
+}
+
+dependencies {
+    jmh(project(":java21"))
+    jmh("io.sigpipe:jbsdiff:1.0")
+    jmh("net.fabricmc:access-widener:2.1.0")
+    jmh("net.fabricmc:sponge-mixin:0.16.5+mixin.0.8.7") {
+        exclude(group = "com.google.code.gson", module = "gson")
+        exclude(group = "com.google.guava", module = "guava")
+    }
+    jmh("org.leavesmc:leaves-plugin-mixin-condition:1.0.0")
+    jmh("org.jetbrains:annotations:15.0")
+    jmh("com.google.code.gson:gson:2.13.2")
+}
+
+// Jars, patches and lists the benchmarks run against, generated once instead of being checked in
+val generateFixtures by tasks.registering(JavaExec::class) {
+    val outputDir = layout.buildDirectory.dir("generated/fixtures")
+    dependsOn(tasks.named("compileJmhJava"))
+    classpath = files(sourceSets["jmh"].output.classesDirs, configurations["jmhRuntimeClasspath"])
+    mainClass.set("dev.menthamc.lightclip.Fixtures")
+    args(outputDir.get().asFile.absolutePath)
+    outputs.dir(outputDir)
+}
+
+sourceSets.named("jmh") {
+    resources.srcDir(generateFixtures)
+}
+
+// Boots a synthetic launcher jar cold, warm and after a repatch, pass options with -PbootBenchmark.args="--rounds 10 ..."
+val bootBenchmark by tasks.registering(JavaExec::class) {
+    val launcherJar = project(":java21").tasks.named("shadowJar")
+    dependsOn(tasks.named("compileJmhJava"), launcherJar)
+    classpath = files(sourceSets["jmh"].output.classesDirs, configurations["jmhRuntimeClasspath"])
+    mainClass.set("dev.menthamc.lightclip.BootBenchmark")
+    argumentProviders.add(CommandLineArgumentProvider {
+        listOf(
+            "--launcher", launcherJar.get().outputs.files.singleFile.absolutePath,
+            "--work-dir", layout.buildDirectory.dir("boot-benchmark").get().asFile.absolutePath
+        ) + (findProperty("bootBenchmark.args")?.toString()?.trim()?.split(Regex("\\s+")) ?: emptyList())
+    })
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    profilers.add("gc")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    resultFormat.set("JSON")
+}
@@ -0,0 +1,56 @@
+package dev.menthamc.lightclip;
+
+import org.leavesmc.leavesclip.mixin.AccessWidenerManager;
+import org.leavesmc.leavesclip.mixin.MixinJarResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Runs the access widener over real class files of the libraries we ship, some of which it widens
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AccessWidenerBenchmark {
+
+    static final String ACCESS_WIDENER = "lightclip-benchmark.accesswidener";
+
+    @Param({
+        "org/objectweb/asm/ClassReader",
+        "org/objectweb/asm/MethodWriter",
+        "com/google/gson/Gson",
+        "org/spongepowered/asm/mixin/transformer/MixinTargetContext"
+    })
+    public String className;
+
+    private byte[] classData;
+
+    @Setup
+    public void setup() {
+        MixinJarResolver.accessWidenerConfigs = List.of(ACCESS_WIDENER);
+        AccessWidenerManager.initAccessWidener(new URLClassLoader(new URL[0], AccessWidenerBenchmark.class.getClassLoader()));
+        this.classData = Fixtures.resource("/" + this.className + ".class");
+    }
+
+    @Benchmark
+    @Threads(1)
+    public byte[] applyAccessWidener() {
+        return AccessWidenerManager.applyAccessWidener(this.className.replace('/', '.'), this.classData);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public byte[] applyAccessWidenerParallel() {
+        return this.applyAccessWidener();
+    }
+}
@@ -0,0 +1,263 @@
+package dev.menthamc.lightclip;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Boots a synthetic launcher jar in patch-only mode cold, warm and after the patched jars are gone, each in a fresh JVM.
+// Setup time is the class path setup as recorded in the boot report, wall time includes the JVM starting and exiting.
+// With a baseline from an earlier run it exits with 1 if the setup of any scenario got slower than the tolerance allows
+public final class BootBenchmark {
+
+    private enum Scenario {
+        COLD,
+        WARM,
+        REPATCH
+    }
+
+    private record Run(long wallMillis, long setupMillis) {
+    }
+
+    private BootBenchmark() {}
+
+    public static void main(final String[] args) throws Exception {
+        final Map<String, String> options = parseOptions(args);
+        final Path launcherJar = Path.of(required(options, "launcher"));
+        final Path workDir = Path.of(options.getOrDefault("work-dir", "boot-benchmark")).toAbsolutePath();
+        final int rounds = Integer.parseInt(options.getOrDefault("rounds", "5"));
+        final List<String> jvmArgs = options.containsKey("jvm-args")
+            ? Arrays.asList(options.get("jvm-args").trim().split("\\s+"))
+            : List.of();
+        final SyntheticBundle.Options bundleOptions = new SyntheticBundle.Options(
+            Integer.parseInt(options.getOrDefault("libraries", "40")),
+            Long.parseLong(options.getOrDefault("library-size", "512")) * 1024,
+            Integer.parseInt(options.getOrDefault("patches", "1")),
+            Long.parseLong(options.getOrDefault("patch-size", "8192")) * 1024
+        );
+
+        Fixtures.deleteRecursively(workDir);
+        final Path repoDir = workDir.resolve("repo");
+        final Map<Scenario, List<Run>> results = new EnumMap<>(Scenario.class);
+
+        // A stand-in for the download server, so cold boots download the original jar without leaving the machine
+        final HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            final URL originalUrl = URI.create(
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/" + SyntheticBundle.ORIGINAL_JAR_NAME
+            ).toURL();
+            System.out.println("Generating synthetic bundle in " + workDir);
+            final SyntheticBundle bundle = SyntheticBundle.generate(launcherJar, workDir.resolve("bundle"), originalUrl, bundleOptions);
+
+            server.createContext("/", exchange -> serve(exchange, bundle.originalJar()));
+            server.setExecutor(executor);
+            server.start();
+
+            for (final Scenario scenario : Scenario.values()) {
+                final List<Run> runs = new ArrayList<>();
+                for (int round = 0; round < rounds; round++) {
+                    prepare(scenario, bundle, repoDir, workDir, jvmArgs);
+                    runs.add(boot(bundle, repoDir, workDir, jvmArgs));
+                }
+                results.put(scenario, runs);
+            }
+        } finally {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+
+        final JsonObject report = report(options, results);
+        final Path output = Path.of(options.getOrDefault("output", workDir.resolve("boot-benchmark.json").toString()));
+        Files.writeString(output, new GsonBuilder().setPrettyPrinting().create().toJson(report));
+        System.out.println("Report written to " + output);
+
+        if (options.containsKey("baseline")) {
+            final double tolerance = Double.parseDouble(options.getOrDefault("tolerance", "0.10"));
+            if (!compare(report, Path.of(options.get("baseline")), tolerance)) {
+                System.exit(1);
+            }
+        }
+    }
+
+    private static void prepare(
+        final Scenario scenario,
+        final SyntheticBundle bundle,
+        final Path repoDir,
+        final Path workDir,
+        final List<String> jvmArgs
+    ) throws Exception {
+        switch (scenario) {
+            case COLD -> Fixtures.deleteRecursively(repoDir);
+            case WARM -> {
+                if (Files.notExists(repoDir.resolve("launch.plan"))) {
+                    boot(bundle, repoDir, workDir, jvmArgs);
+                }
+            }
+            // The original jar is still downloaded, only the patches are applied again
+            case REPATCH -> Fixtures.deleteRecursively(repoDir.resolve("versions"));
+        }
+    }
+
+    private static Run boot(final SyntheticBundle bundle, final Path repoDir, final Path workDir, final List<String> jvmArgs) throws Exception {
+        final List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        command.add("-Dlightclip.patchonly=true");
+        command.add("-DbundlerRepoDir=" + repoDir);
+        // Skips the region lookup, it needs the internet and isn't part of what is measured
+        command.add("-Dlightclip.downloadContext=download-context");
+        command.add("-cp");
+        command.add(bundle.launcherJar().toString());
+        command.add(Lightclip.class.getName());
+
+        final Path log = workDir.resolve("boot.log");
+        final long start = System.nanoTime();
+        final Process process = new ProcessBuilder(command)
+            .directory(workDir.toFile())
+            .redirectErrorStream(true)
+            .redirectOutput(log.toFile())
+            .start();
+        final int exitCode = process.waitFor();
+        final long wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (exitCode != 0) {
+            throw new IllegalStateException("Boot exited with " + exitCode + ", see " + log);
+        }
+
+        final JsonObject bootReport = JsonParser.parseString(Files.readString(repoDir.resolve("boot-report.json"))).getAsJsonObject();
+        return new Run(wallMillis, bootReport.get("totalMillis").getAsLong());
+    }
+
+    private static void serve(final HttpExchange exchange, final Path file) throws IOException {
+        try (exchange) {
+            final long length = Files.size(file);
+            long start = 0;
+            long end = length - 1;
+            exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+
+            final String range = exchange.getRequestHeaders().getFirst("Range");
+            if (range != null && range.startsWith("bytes=")) {
+                final String[] bounds = range.substring("bytes=".length()).split("-", 2);
+                start = Long.parseLong(bounds[0]);
+                if (!bounds[1].isEmpty()) {
+                    end = Math.min(Long.parseLong(bounds[1]), length - 1);
+                }
+                exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + length);
+                exchange.sendResponseHeaders(206, end - start + 1);
+            } else {
+                exchange.sendResponseHeaders(200, length);
+            }
+
+            try (
+                final FileChannel channel = FileChannel.open(file);
+                final OutputStream out = exchange.getResponseBody();
+                final WritableByteChannel target = Channels.newChannel(out)
+            ) {
+                long position = start;
+                while (position <= end) {
+                    position += channel.transferTo(position, end + 1 - position, target);
+                }
+            }
+        }
+    }
+
+    private static JsonObject report(final Map<String, String> options, final Map<Scenario, List<Run>> results) {
+        final JsonObject report = new JsonObject();
+        final JsonObject optionsJson = new JsonObject();
+        options.forEach(optionsJson::addProperty);
+        report.add("options", optionsJson);
+
+        final JsonObject scenarios = new JsonObject();
+        System.out.printf(Locale.ROOT, "%-8s %12s %12s %12s %12s%n", "boot", "setup p50", "setup min", "setup max", "wall p50");
+        for (final Map.Entry<Scenario, List<Run>> entry : results.entrySet()) {
+            final long[] setup = entry.getValue().stream().mapToLong(Run::setupMillis).sorted().toArray();
+            final long[] wall = entry.getValue().stream().mapToLong(Run::wallMillis).sorted().toArray();
+            final String name = entry.getKey().name().toLowerCase(Locale.ROOT);
+            System.out.printf(Locale.ROOT, "%-8s %10d ms %10d ms %10d ms %10d ms%n",
+                name, median(setup), setup[0], setup[setup.length - 1], median(wall));
+
+            final JsonObject scenario = new JsonObject();
+            scenario.addProperty("medianSetupMillis", median(setup));
+            scenario.addProperty("medianWallMillis", median(wall));
+            scenario.add("setupMillis", toJson(setup));
+            scenario.add("wallMillis", toJson(wall));
+            scenarios.add(name, scenario);
+        }
+        report.add("scenarios", scenarios);
+        return report;
+    }
+
+    private static boolean compare(final JsonObject report, final Path baselineFile, final double tolerance) throws IOException {
+        final JsonObject baseline = JsonParser.parseString(Files.readString(baselineFile)).getAsJsonObject().getAsJsonObject("scenarios");
+        final JsonObject current = report.getAsJsonObject("scenarios");
+        boolean passed = true;
+        for (final String name : current.keySet()) {
+            if (!baseline.has(name)) {
+                continue;
+            }
+            final long before = baseline.getAsJsonObject(name).get("medianSetupMillis").getAsLong();
+            final long after = current.getAsJsonObject(name).get("medianSetupMillis").getAsLong();
+            if (after > before * (1 + tolerance)) {
+                System.out.printf(Locale.ROOT, "Regression in %s boot: %d ms, baseline %d ms%n", name, after, before);
+                passed = false;
+            }
+        }
+        return passed;
+    }
+
+    private static long median(final long[] sorted) {
+        return sorted[sorted.length / 2];
+    }
+
+    private static JsonArray toJson(final long[] values) {
+        final JsonArray array = new JsonArray();
+        for (final long value : values) {
+            array.add(value);
+        }
+        return array;
+    }
+
+    // --name value pairs
+    private static Map<String, String> parseOptions(final String[] args) {
+        final Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 == args.length) {
+                throw new IllegalArgumentException("Expected --name value, got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+
+    private static String required(final Map<String, String> options, final String name) {
+        final String value = options.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing --" + name);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,88 @@
+package dev.menthamc.lightclip;
+
+import dev.menthamc.lightclip.benchmark.target.MixedTarget;
+import dev.menthamc.lightclip.benchmark.target.PlainTarget;
+import org.leavesmc.leavesclip.mixin.AccessWidenerManager;
+import org.leavesmc.leavesclip.mixin.MixinJarResolver;
+import org.leavesmc.leavesclip.mixin.MixinTargetIndex;
+import org.leavesmc.leavesclip.mixin.MixinURLClassLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.spongepowered.asm.mixin.Mixins;
+
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Loads a class through the mixin class loader, once for a class a mixin targets and once for one no mixin touches
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ClassLoadingBenchmark {
+
+    @Param({"plain", "mixin"})
+    public String target;
+
+    private URL[] urls;
+    private ClassLoader parent;
+    private String className;
+    private MixinTargetIndex targetIndex;
+
+    @Setup
+    public void setup() {
+        MixinJarResolver.mixinConfigs = List.of("lightclip-benchmark.mixins.json");
+        MixinJarResolver.accessWidenerConfigs = List.of(AccessWidenerBenchmark.ACCESS_WIDENER);
+
+        this.urls = new URL[]{ClassLoadingBenchmark.class.getProtectionDomain().getCodeSource().getLocation()};
+        this.parent = ClassLoadingBenchmark.class.getClassLoader();
+        Lightclip.bootstrapMixin();
+        final MixinURLClassLoader classLoader = Lightclip.createMixinClassLoader(this.urls);
+        AccessWidenerManager.initAccessWidener(classLoader);
+        // The configs leave Mixins#getConfigs once they are selected, so the index has to be made before anything loads
+        this.targetIndex = new MixinTargetIndex(Mixins.getConfigs());
+
+        this.className = this.target.equals("mixin") ? MixedTarget.class.getName() : PlainTarget.class.getName();
+    }
+
+    // A class can only be defined once per class loader
+    @State(Scope.Thread)
+    public static class Loader {
+        private BenchmarkClassLoader classLoader;
+
+        @Setup(Level.Invocation)
+        public void setup(final ClassLoadingBenchmark benchmark) {
+            this.classLoader = new BenchmarkClassLoader(benchmark.urls, benchmark.parent);
+            this.classLoader.setTargetIndex(benchmark.targetIndex);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Class<?> findClass(final Loader loader) throws ClassNotFoundException {
+        return loader.classLoader.define(this.className);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Class<?> findClassParallel(final Loader loader) throws ClassNotFoundException {
+        return this.findClass(loader);
+    }
+
+    private static final class BenchmarkClassLoader extends MixinURLClassLoader {
+        BenchmarkClassLoader(final URL[] urls, final ClassLoader parent) {
+            super(urls, parent);
+        }
+
+        Class<?> define(final String name) throws ClassNotFoundException {
+            return this.findClass(name);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package dev.menthamc.lightclip;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// Extracts a generated library jar from the benchmark jar on every invocation
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ExtractBenchmark {
+
+    private static final PatchEntry[] NO_PATCHES = new PatchEntry[0];
+
+    @Param({"1", "4", "16"})
+    public int sizeMib;
+
+    private FileEntry entry;
+
+    @Setup
+    public void setup() throws IOException {
+        final FileEntry[] entries = FileEntry.parse(new BufferedReader(new InputStreamReader(
+            new ByteArrayInputStream(Fixtures.resource(Fixtures.LIBRARIES_LIST))
+        )));
+        final String path = "benchmark/" + Fixtures.libraryName(this.sizeMib);
+        this.entry = Arrays.stream(entries)
+            .filter(entry -> entry.path().equals(path))
+            .findFirst()
+            .orElseThrow();
+    }
+
+    @State(Scope.Thread)
+    public static class Output {
+        private Path repoDir;
+        private VerificationManifest manifest;
+
+        @Setup
+        public void setup() throws IOException {
+            this.repoDir = Files.createTempDirectory("lightclip-benchmark-repo");
+        }
+
+        // Nothing may be left from the last invocation, otherwise it only verifies the output
+        @Setup(Level.Invocation)
+        public void clean() throws IOException {
+            Fixtures.deleteRecursively(this.repoDir.resolve("libraries"));
+            this.manifest = VerificationManifest.load(this.repoDir);
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            Fixtures.deleteRecursively(this.repoDir);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public URL extractFile(final Output output) throws IOException {
+        return this.entry.extractFile(
+            NO_PATCHES,
+            "libraries",
+            OriginalJar.none(),
+            "/META-INF/libraries",
+            output.repoDir.resolve("libraries"),
+            output.manifest
+        );
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public URL extractFileParallel(final Output output) throws IOException {
+        return this.extractFile(output);
+    }
+}
@@ -0,0 +1,152 @@
+package dev.menthamc.lightclip;
+
+import io.sigpipe.jbsdiff.Diff;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// Generates the jars, patches and lists the benchmarks run against, see the `generateFixtures` task.
+// The layout matches a real launcher jar, so the code under test finds them where it always looks
+public final class Fixtures {
+
+    static final int[] SIZES_MIB = {1, 4, 16};
+
+    static final String LIBRARIES_LIST = "/META-INF/benchmark-libraries.list";
+    static final String PATCHES_LIST = "/META-INF/benchmark-patches.list";
+
+    private static final String[] WORDS = {
+        "server", "world", "chunk", "entity", "block", "level", "player", "packet", "tick", "region",
+        "biome", "light", "state", "registry", "codec", "network", "handler", "inventory", "recipe", "item"
+    };
+
+    private Fixtures() {}
+
+    public static void main(final String[] args) throws Exception {
+        final Path outputDir = Path.of(args[0]);
+        final List<String> libraries = new ArrayList<>();
+        final List<String> patches = new ArrayList<>();
+
+        for (final int size : SIZES_MIB) {
+            final byte[] library = generateJar("library", size * 1024L * 1024, 0);
+            final String libraryPath = "benchmark/" + libraryName(size);
+            write(outputDir.resolve("META-INF/libraries").resolve(libraryPath), library);
+            libraries.add(Hashing.toHex(Hashing.sha256(library)) + "\tbenchmark:" + libraryName(size) + "\t" + libraryPath);
+
+            // The patched server only differs in some of its entries, like a real server patch
+            final byte[] original = generateJar("server", size * 1024L * 1024, 0);
+            final byte[] patched = generateJar("server", size * 1024L * 1024, 50);
+            final byte[] patch = diff(original, patched);
+
+            final String serverPath = "benchmark/" + serverName(size);
+            write(outputDir.resolve(originalJarName(size)), zip("META-INF/versions/" + serverPath, original));
+            write(outputDir.resolve("META-INF/versions").resolve(serverPath + ".patch"), patch);
+            patches.add(String.join("\t",
+                "versions",
+                Hashing.toHex(Hashing.sha256(original)),
+                Hashing.toHex(Hashing.sha256(patch)),
+                Hashing.toHex(Hashing.sha256(patched)),
+                serverPath,
+                serverPath + ".patch",
+                serverPath
+            ));
+        }
+
+        Files.write(outputDir.resolve(LIBRARIES_LIST.substring(1)), libraries);
+        Files.write(outputDir.resolve(PATCHES_LIST.substring(1)), patches);
+    }
+
+    static String libraryName(final int size) {
+        return "library-" + size + "m.jar";
+    }
+
+    static String serverName(final int size) {
+        return "server-" + size + "m.jar";
+    }
+
+    static String originalJarName(final int size) {
+        return "original-" + size + "m.jar";
+    }
+
+    static byte[] resource(final String name) {
+        try (final InputStream in = Fixtures.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing fixture " + name + ", run the generateFixtures task");
+            }
+            return in.readAllBytes();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static Path copy(final String name, final Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Files.write(target, resource(name));
+        return target;
+    }
+
+    static void deleteRecursively(final Path dir) throws IOException {
+        if (Files.notExists(dir)) {
+            return;
+        }
+        try (var files = Files.walk(dir)) {
+            for (final Path file : files.sorted((a, b) -> b.compareTo(a)).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    // A jar of about `size` bytes of compressible class-sized entries, every `changeEvery`th entry differs between variants.
+    // Jars of the same name have the same content
+    static byte[] generateJar(final String name, final long size, final int changeEvery) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (int index = 0; bytes.size() < size; index++) {
+                final boolean changed = changeEvery > 0 && index % changeEvery == 0;
+                zip.putNextEntry(new ZipEntry("net/minecraft/generated/" + name + "/Class" + index + ".class"));
+                zip.write(entryData(31L * name.hashCode() + (changed ? -index - 1 : index)));
+                zip.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] entryData(final long seed) {
+        final Random random = new Random(seed);
+        final StringBuilder data = new StringBuilder();
+        while (data.length() < 16 * 1024) {
+            data.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextInt(1000)).append(' ');
+        }
+        return data.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] zip(final String name, final byte[] data) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry(name));
+            zip.write(data);
+            zip.closeEntry();
+        }
+        return bytes.toByteArray();
+    }
+
+    static byte[] diff(final byte[] original, final byte[] patched) throws Exception {
+        final ByteArrayOutputStream patch = new ByteArrayOutputStream();
+        Diff.diff(original, patched, patch);
+        return patch.toByteArray();
+    }
+
+    private static void write(final Path file, final byte[] data) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, data);
+    }
+}
@@ -0,0 +1,38 @@
+package dev.menthamc.lightclip;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HexBenchmark {
+
+    private String hex;
+
+    @Setup
+    public void setup() {
+        // Every line of the lists has a SHA-256 hash like this one
+        this.hex = Hashing.toHex(Hashing.sha256(new byte[]{1, 2, 3}));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public byte[] fromHex() {
+        return Util.fromHex(this.hex);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public byte[] fromHexParallel() {
+        return this.fromHex();
+    }
+}
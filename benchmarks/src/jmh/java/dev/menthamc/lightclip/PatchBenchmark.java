@@ -0,0 +1,94 @@
+package dev.menthamc.lightclip;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// Applies the patch of a generated server jar from scratch on every invocation
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PatchBenchmark {
+
+    @Param({"1", "4", "16"})
+    public int sizeMib;
+
+    private Path dir;
+    private PatchEntry patch;
+    private OriginalJar originalJar;
+
+    @Setup
+    public void setup() throws IOException {
+        this.dir = Files.createTempDirectory("lightclip-benchmark");
+        final Path originalJarFile = Fixtures.copy("/" + Fixtures.originalJarName(this.sizeMib), this.dir.resolve("original.jar"));
+        this.originalJar = OriginalJar.download(() -> originalJarFile);
+
+        final PatchEntry[] patches = PatchEntry.parse(new BufferedReader(new InputStreamReader(
+            new ByteArrayInputStream(Fixtures.resource(Fixtures.PATCHES_LIST))
+        )));
+        final String outputPath = "benchmark/" + Fixtures.serverName(this.sizeMib);
+        this.patch = Arrays.stream(patches)
+            .filter(patch -> patch.outputPath().equals(outputPath))
+            .findFirst()
+            .orElseThrow();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        this.originalJar.close();
+        Fixtures.deleteRecursively(this.dir);
+    }
+
+    @State(Scope.Thread)
+    public static class Output {
+        private Path repoDir;
+        private VerificationManifest manifest;
+
+        @Setup
+        public void setup() throws IOException {
+            this.repoDir = Files.createTempDirectory("lightclip-benchmark-repo");
+        }
+
+        // Nothing may be left from the last invocation, otherwise it only verifies the output
+        @Setup(Level.Invocation)
+        public void clean() throws IOException {
+            Fixtures.deleteRecursively(this.repoDir.resolve("versions"));
+            this.manifest = VerificationManifest.load(this.repoDir);
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            Fixtures.deleteRecursively(this.repoDir);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public URL applyPatch(final Output output) throws IOException {
+        return this.patch.applyPatch(this.originalJar, output.repoDir, output.manifest);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public URL applyPatchParallel(final Output output) throws IOException {
+        return this.applyPatch(output);
+    }
+}
@@ -0,0 +1,122 @@
+package dev.menthamc.lightclip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// A launcher jar like the one paperweight builds, but with generated libraries and patches instead of a real server.
+// The original jar the patches apply to is written next to it, to be served by a local stand-in of the download server
+record SyntheticBundle(Path launcherJar, Path originalJar) {
+
+    static final String ORIGINAL_JAR_NAME = "original.jar";
+
+    record Options(int libraries, long librarySize, int patches, long patchSize) {
+    }
+
+    static SyntheticBundle generate(final Path launcherJar, final Path outputDir, final URL originalUrl, final Options options) throws Exception {
+        Files.createDirectories(outputDir);
+        final Path bundleFile = outputDir.resolve("launcher.jar");
+        final Path originalFile = outputDir.resolve(ORIGINAL_JAR_NAME);
+
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, Lightclip.class.getName());
+
+        // The download context needs the hash of the original jar, so it is complete before the bundle is written
+        final List<String> versions = new ArrayList<>();
+        final List<String> patches = new ArrayList<>();
+        final List<byte[]> patchData = new ArrayList<>();
+        try (final ZipOutputStream original = new ZipOutputStream(Files.newOutputStream(originalFile))) {
+            for (int i = 0; i < options.patches(); i++) {
+                final String path = "benchmark/server-" + i + ".jar";
+                final byte[] originalServer = Fixtures.generateJar("server-" + i, options.patchSize(), 0);
+                final byte[] patchedServer = Fixtures.generateJar("server-" + i, options.patchSize(), 50);
+                final byte[] patch = Fixtures.diff(originalServer, patchedServer);
+                put(original, "META-INF/versions/" + path, originalServer);
+                patchData.add(patch);
+
+                final String outputHash = Hashing.toHex(Hashing.sha256(patchedServer));
+                versions.add(outputHash + "\tbenchmark:server-" + i + "\t" + path);
+                patches.add(String.join("\t",
+                    "versions",
+                    Hashing.toHex(Hashing.sha256(originalServer)),
+                    Hashing.toHex(Hashing.sha256(patch)),
+                    outputHash,
+                    path,
+                    path + ".patch",
+                    path
+                ));
+            }
+        }
+        final byte[] originalHash = Hashing.sha256(originalFile);
+
+        final List<String> libraries = new ArrayList<>();
+        try (final JarOutputStream bundle = new JarOutputStream(Files.newOutputStream(bundleFile), manifest)) {
+            copyLauncher(launcherJar, bundle);
+
+            for (int i = 0; i < options.libraries(); i++) {
+                final String path = "benchmark/library-" + i + ".jar";
+                final byte[] library = Fixtures.generateJar("library-" + i, options.librarySize(), 0);
+                put(bundle, "META-INF/libraries/" + path, library);
+                libraries.add(Hashing.toHex(Hashing.sha256(library)) + "\tbenchmark:library-" + i + "\t" + path);
+            }
+            for (int i = 0; i < patchData.size(); i++) {
+                put(bundle, "META-INF/versions/benchmark/server-" + i + ".jar.patch", patchData.get(i));
+            }
+
+            put(bundle, "META-INF/libraries.list", lines(libraries));
+            put(bundle, "META-INF/versions.list", lines(versions));
+            put(bundle, "META-INF/patches.list", lines(patches));
+            put(bundle, "META-INF/download-context", (Hashing.toHex(originalHash) + "\t" + originalUrl + "\t" + ORIGINAL_JAR_NAME)
+                .getBytes(StandardCharsets.UTF_8));
+            put(bundle, "META-INF/main-class", "benchmark.Main".getBytes(StandardCharsets.UTF_8));
+        }
+
+        return new SyntheticBundle(bundleFile, originalFile);
+    }
+
+    // Everything but the manifest, the bundle gets one of its own
+    private static void copyLauncher(final Path launcherJar, final ZipOutputStream bundle) throws IOException {
+        try (final JarFile launcher = new JarFile(launcherJar.toFile())) {
+            final Enumeration<JarEntry> entries = launcher.entries();
+            while (entries.hasMoreElements()) {
+                final JarEntry entry = entries.nextElement();
+                if (entry.isDirectory() || entry.getName().equals(JarFile.MANIFEST_NAME)) {
+                    continue;
+                }
+                bundle.putNextEntry(new ZipEntry(entry.getName()));
+                try (final InputStream in = launcher.getInputStream(entry)) {
+                    in.transferTo(bundle);
+                }
+                bundle.closeEntry();
+            }
+        }
+    }
+
+    private static void put(final ZipOutputStream zip, final String name, final byte[] data) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(data);
+        zip.closeEntry();
+    }
+
+    private static byte[] lines(final List<String> lines) {
+        final StringBuilder text = new StringBuilder();
+        for (final String line : lines) {
+            text.append(line).append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
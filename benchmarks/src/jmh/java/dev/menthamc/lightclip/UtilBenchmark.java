@@ -0,0 +1,68 @@
+package dev.menthamc.lightclip;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UtilBenchmark {
+
+    @Param({"1", "4", "16"})
+    public int sizeMib;
+
+    private byte[] data;
+    private byte[] hash;
+    private Path file;
+
+    @Setup
+    public void setup() throws IOException {
+        this.data = Fixtures.resource("/META-INF/libraries/benchmark/" + Fixtures.libraryName(this.sizeMib));
+        this.hash = Hashing.sha256(this.data);
+        this.file = Files.createTempFile("lightclip-benchmark", ".jar");
+        Files.write(this.file, this.data);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.file);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public byte[] readFully() throws IOException {
+        return Util.readFully(new ByteArrayInputStream(this.data));
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public byte[] readFullyParallel() throws IOException {
+        return this.readFully();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean isFileValid() {
+        return Util.isFileValid(this.file, this.hash);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean isFileValidParallel() {
+        return this.isFileValid();
+    }
+}
@@ -0,0 +1,26 @@
+package dev.menthamc.lightclip.benchmark.mixin;
+
+import dev.menthamc.lightclip.benchmark.target.MixedTarget;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+@Mixin(MixedTarget.class)
+public abstract class MixedTargetMixin {
+
+    @Shadow
+    private int ticks;
+
+    @Inject(method = "tick", at = @At("HEAD"))
+    private void lightclip$tick(final CallbackInfo ci) {
+        this.ticks++;
+    }
+
+    @Inject(method = "value", at = @At("RETURN"), cancellable = true)
+    private void lightclip$value(final CallbackInfoReturnable<Integer> cir) {
+        cir.setReturnValue(cir.getReturnValue() * 2);
+    }
+}
@@ -0,0 +1,26 @@
+package dev.menthamc.lightclip.benchmark.target;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// No mixin targets this class, it only goes through the transformer and the access widener
+public class PlainTarget {
+
+    private final List<String> values = new ArrayList<>();
+    private int ticks;
+
+    public void tick() {
+        this.ticks++;
+        if (this.ticks % 20 == 0) {
+            this.values.add("tick " + this.ticks);
+        }
+    }
+
+    public int value() {
+        return this.values.size() + this.ticks;
+    }
+
+    public List<String> values() {
+        return this.values;
+    }
+}
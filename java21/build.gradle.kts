@@ -36,6 +36,17 @@ dependencies {
     }
     implementation("com.google.code.gson:gson:2.13.2")
     implementation("org.jetbrains:annotations:15.0")
+
+    testImplementation(platform("org.junit:junit-bom:5.13.4"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+tasks.test {
+    useJUnitPlatform()
+    // Read once when Downloader loads. Stalled test mirrors are given up on quickly and a few MiB span several chunks
+    systemProperty("lightclip.download.stallTimeout", "500")
+    systemProperty("lightclip.download.chunkSize", "1")
 }
 
 tasks.shadowJar {
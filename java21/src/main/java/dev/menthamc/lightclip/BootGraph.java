@@ -0,0 +1,52 @@
+package dev.menthamc.lightclip;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// The boot stages as a small task graph. Every stage runs on the pool as soon as the stages it depends on are done,
+// so stages that don't depend on each other overlap. A failing stage is reported through Util#fail like before.
+final class BootGraph implements AutoCloseable {
+
+    @FunctionalInterface
+    interface Step {
+        void run() throws Exception;
+    }
+
+    private final ExecutorService pool = Executors.newCachedThreadPool(Workers.threadFactory("Boot"));
+
+    <T> CompletableFuture<T> stage(final String name, final Callable<T> task, final CompletableFuture<?>... dependencies) {
+        return CompletableFuture.allOf(dependencies).thenApplyAsync(ignored -> call(name, task), this.pool);
+    }
+
+    CompletableFuture<Void> run(final String name, final Step step, final CompletableFuture<?>... dependencies) {
+        return this.stage(name, () -> {
+            step.run();
+            return null;
+        }, dependencies);
+    }
+
+    static <T> T await(final CompletableFuture<T> stage) {
+        try {
+            return stage.join();
+        } catch (final CompletionException e) {
+            // Stages report their own failure, this only happens if the JVM is already on its way out
+            throw Util.fail("Boot stage failed", e.getCause());
+        }
+    }
+
+    private static <T> T call(final String name, final Callable<T> task) {
+        try (final BootReport.Phase ignored = BootReport.phase(name)) {
+            return task.call();
+        } catch (final Throwable t) {
+            throw Util.fail("Failed to run boot stage " + name, t);
+        }
+    }
+
+    @Override
+    public void close() {
+        this.pool.shutdown();
+    }
+}
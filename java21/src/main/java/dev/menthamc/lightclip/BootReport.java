@@ -0,0 +1,261 @@
+package dev.menthamc.lightclip;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+// Times every boot phase: wall time, CPU time and allocated bytes of the thread running it, and the bytes it read
+// and wrote. Phases nest per thread and bytes are counted for the innermost one. The report is written to the repo
+// dir as JSON on every boot, the summary table is printed with `lightclip.bootReport` set to true.
+// Getting the thread MXBean initializes the management subsystem, which takes longer than most phases, so it is
+// created on a thread of its own. Boot phases run on threads of their own as well, so an outer phase that starts
+// before the MXBean is there is measured from where its thread last left off, or from the start of the thread.
+// Nested phases that start before it are reported without CPU time and allocations.
+public final class BootReport {
+
+    private static final String FILE_NAME = "boot-report.json";
+    private static final boolean PRINT = Boolean.getBoolean("lightclip.bootReport");
+    private static final long UNKNOWN = -1;
+
+    private static final long startNanos = System.nanoTime();
+    private static final CompletableFuture<Sampler> sampler = CompletableFuture.supplyAsync(
+        Sampler::create,
+        task -> Workers.threadFactory("Boot Report").newThread(task).start()
+    );
+    private static final ThreadLocal<Phase> current = new ThreadLocal<>();
+    // The CPU time and allocations of the thread when its last outer phase ended, zero before its first one
+    private static final ThreadLocal<long[]> threadBaseline = ThreadLocal.withInitial(() -> new long[]{0, 0});
+    private static final Queue<Record> records = new ConcurrentLinkedQueue<>();
+
+    private BootReport() {}
+
+    public static Phase phase(final String name) {
+        return phase(name, null);
+    }
+
+    public static Phase phase(final String name, final String detail) {
+        final Phase phase = new Phase(name, detail, current.get());
+        current.set(phase);
+        return phase;
+    }
+
+    public static void bytesRead(final long bytes) {
+        final Phase phase = current.get();
+        if (phase != null) {
+            phase.bytesRead += bytes;
+        }
+    }
+
+    public static void bytesWritten(final long bytes) {
+        final Phase phase = current.get();
+        if (phase != null) {
+            phase.bytesWritten += bytes;
+        }
+    }
+
+    static void write(final Path repoDir) {
+        // Only waits if the whole boot took less time than getting the MXBean
+        final Sampler sampler = BootReport.sampler.join();
+        final List<Record> phases = new ArrayList<>(records);
+        final Map<String, Summary> summaries = new LinkedHashMap<>();
+        for (final Record record : phases) {
+            summaries.computeIfAbsent(record.name(), Summary::new).add(record);
+        }
+        final long totalNanos = System.nanoTime() - startNanos;
+
+        if (PRINT) {
+            Lightclip.logger.info("Boot took {} ms", TimeUnit.NANOSECONDS.toMillis(totalNanos));
+            Lightclip.logger.info(String.format(Locale.ROOT, "%-16s %6s %10s %10s %12s %12s %12s",
+                "phase", "count", "wall ms", "cpu ms", "allocated", "read", "written"));
+            for (final Summary summary : summaries.values()) {
+                Lightclip.logger.info(String.format(Locale.ROOT, "%-16s %6d %10d %10d %12d %12d %12d",
+                    summary.name, summary.count, TimeUnit.NANOSECONDS.toMillis(summary.wallNanos), TimeUnit.NANOSECONDS.toMillis(summary.cpuNanos),
+                    summary.allocatedBytes, summary.bytesRead, summary.bytesWritten));
+            }
+        }
+
+        final JsonObject json = new JsonObject();
+        json.addProperty("totalMillis", TimeUnit.NANOSECONDS.toMillis(totalNanos));
+        final JsonArray summaryJson = new JsonArray();
+        for (final Summary summary : summaries.values()) {
+            final JsonObject object = new JsonObject();
+            object.addProperty("name", summary.name);
+            object.addProperty("count", summary.count);
+            object.addProperty("wallMillis", TimeUnit.NANOSECONDS.toMillis(summary.wallNanos));
+            if (sampler.cpuTimeSupported()) {
+                object.addProperty("cpuMillis", TimeUnit.NANOSECONDS.toMillis(summary.cpuNanos));
+            }
+            if (sampler.allocations() != null) {
+                object.addProperty("allocatedBytes", summary.allocatedBytes);
+            }
+            object.addProperty("bytesRead", summary.bytesRead);
+            object.addProperty("bytesWritten", summary.bytesWritten);
+            summaryJson.add(object);
+        }
+        json.add("summary", summaryJson);
+        final JsonArray phaseJson = new JsonArray();
+        for (final Record record : phases) {
+            final JsonObject object = new JsonObject();
+            object.addProperty("name", record.name());
+            if (record.detail() != null) {
+                object.addProperty("detail", record.detail());
+            }
+            object.addProperty("thread", record.thread());
+            object.addProperty("startMicros", TimeUnit.NANOSECONDS.toMicros(record.startNanos() - startNanos));
+            object.addProperty("wallMicros", TimeUnit.NANOSECONDS.toMicros(record.wallNanos()));
+            if (record.cpuNanos() != UNKNOWN) {
+                object.addProperty("cpuMicros", TimeUnit.NANOSECONDS.toMicros(record.cpuNanos()));
+            }
+            if (record.allocatedBytes() != UNKNOWN) {
+                object.addProperty("allocatedBytes", record.allocatedBytes());
+            }
+            object.addProperty("bytesRead", record.bytesRead());
+            object.addProperty("bytesWritten", record.bytesWritten());
+            phaseJson.add(object);
+        }
+        json.add("phases", phaseJson);
+
+        final Path file = repoDir.resolve(FILE_NAME);
+        try {
+            Files.createDirectories(repoDir);
+            final Path tempFile = Util.tempFile(file);
+            Files.writeString(tempFile, new GsonBuilder().setPrettyPrinting().create().toJson(json));
+            Util.moveAtomically(tempFile, file);
+        } catch (final IOException e) {
+            Lightclip.logger.warn("Failed to write boot report {}", file);
+        }
+    }
+
+    private static long since(final long start, final long end) {
+        return start == UNKNOWN || end == UNKNOWN ? UNKNOWN : end - start;
+    }
+
+    public static final class Phase implements AutoCloseable {
+        private final String name;
+        private final String detail;
+        private final Phase parent;
+        private final long startNanos = System.nanoTime();
+        private final boolean sampled;
+        private final long startCpu;
+        private final long startAllocated;
+        private long bytesRead;
+        private long bytesWritten;
+
+        private Phase(final String name, final String detail, final Phase parent) {
+            this.name = name;
+            this.detail = detail;
+            this.parent = parent;
+            final Sampler sampler = BootReport.sampler.getNow(null);
+            this.sampled = sampler != null;
+            this.startCpu = sampler != null ? sampler.cpuTime() : UNKNOWN;
+            this.startAllocated = sampler != null ? sampler.allocatedBytes() : UNKNOWN;
+        }
+
+        @Override
+        public void close() {
+            final long wallNanos = System.nanoTime() - this.startNanos;
+            final Sampler sampler = BootReport.sampler.getNow(null);
+            final long endCpu = sampler != null ? sampler.cpuTime() : UNKNOWN;
+            final long endAllocated = sampler != null ? sampler.allocatedBytes() : UNKNOWN;
+            long startCpu = this.startCpu;
+            long startAllocated = this.startAllocated;
+            if (this.parent == null) {
+                final long[] baseline = threadBaseline.get();
+                if (sampler != null && !this.sampled) {
+                    startCpu = baseline[0];
+                    startAllocated = baseline[1];
+                }
+                // A phase that ends before the MXBean is there leaves the thread without a baseline
+                threadBaseline.set(new long[]{endCpu, endAllocated});
+            }
+
+            records.add(new Record(
+                this.name,
+                this.detail,
+                Thread.currentThread().getName(),
+                this.startNanos,
+                wallNanos,
+                since(startCpu, endCpu),
+                since(startAllocated, endAllocated),
+                this.bytesRead,
+                this.bytesWritten
+            ));
+            if (this.parent == null) {
+                current.remove();
+            } else {
+                current.set(this.parent);
+            }
+        }
+    }
+
+    private record Record(
+        String name,
+        String detail,
+        String thread,
+        long startNanos,
+        long wallNanos,
+        long cpuNanos,
+        long allocatedBytes,
+        long bytesRead,
+        long bytesWritten
+    ) {
+    }
+
+    private static final class Summary {
+        private final String name;
+        private int count;
+        private long wallNanos;
+        private long cpuNanos;
+        private long allocatedBytes;
+        private long bytesRead;
+        private long bytesWritten;
+
+        Summary(final String name) {
+            this.name = name;
+        }
+
+        void add(final Record record) {
+            this.count++;
+            this.wallNanos += record.wallNanos();
+            this.cpuNanos += Math.max(record.cpuNanos(), 0);
+            this.allocatedBytes += Math.max(record.allocatedBytes(), 0);
+            this.bytesRead += record.bytesRead();
+            this.bytesWritten += record.bytesWritten();
+        }
+    }
+
+    private record Sampler(ThreadMXBean threads, com.sun.management.ThreadMXBean allocations, boolean cpuTimeSupported) {
+
+        static Sampler create() {
+            final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            final com.sun.management.ThreadMXBean allocations =
+                threads instanceof final com.sun.management.ThreadMXBean sunThreads && sunThreads.isThreadAllocatedMemorySupported()
+                    ? sunThreads
+                    : null;
+            return new Sampler(threads, allocations, threads.isCurrentThreadCpuTimeSupported());
+        }
+
+        long cpuTime() {
+            return this.cpuTimeSupported ? this.threads.getCurrentThreadCpuTime() : UNKNOWN;
+        }
+
+        long allocatedBytes() {
+            return this.allocations != null ? this.allocations.getCurrentThreadAllocatedBytes() : UNKNOWN;
+        }
+    }
+}
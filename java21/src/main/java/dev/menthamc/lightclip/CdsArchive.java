@@ -0,0 +1,331 @@
+package dev.menthamc.lightclip;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+
+// Class data sharing for the server. The flags have to be given when the JVM starts, so with `lightclip.cds` set the
+// launcher starts the server in a second JVM and waits for it. The first run trains: the JVM writes an archive of the
+// classes it loaded when the server stops. Later runs start with that archive, until the launch plan fingerprint, the
+// JVM or its arguments change and the next run trains again.
+// `lightclip.cds` may be `true` or `archive` for a dynamic CDS archive, or `aot` for the AOT cache of JDK 24 and newer.
+// The AOT cache only holds classes of the JDK's own class loaders, the server's classes that the launcher's class
+// loader defines are left out of it.
+// The server JVM gets the flags of this one, except those that bind a port or attach an agent, which this JVM holds
+// already. The launcher closes its flight recordings once the server JVM runs, so the recording file ends up being the
+// server's. Log files are written by both JVMs unless their names contain %p. A launcher started with
+// -XX:+AlwaysPreTouch has touched its whole heap, so it runs the server itself rather than a second heap being touched.
+// -Xms only reserves the heap of the launcher, it stays mostly untouched.
+final class CdsArchive {
+
+    private static final String MODE = System.getProperty("lightclip.cds", "false").toLowerCase(Locale.ROOT);
+    private static final String CHILD_PROPERTY = "lightclip.cds.child";
+    // The server JVM creates this file once it runs Lightclip, any earlier exit means it rejected its flags
+    private static final String STARTED_PROPERTY = "lightclip.cds.started";
+    private static final String STARTED_FILE_NAME = "cds.started";
+    private static final String STATE_FILE_NAME = "cds.state";
+    // Flags of an earlier relaunch, or given by hand, that would conflict with the ones set here
+    private static final String[] CDS_FLAGS = {
+        "-Xshare",
+        "-XX:SharedArchiveFile",
+        "-XX:ArchiveClassesAtExit",
+        "-XX:+AutoCreateSharedArchive",
+        "-XX:AOT",
+        "-D" + CHILD_PROPERTY,
+        "-D" + STARTED_PROPERTY
+    };
+    private static final String[] LAUNCHER_ONLY_FLAGS = {
+        "-agentlib:",
+        "-agentpath:",
+        "-javaagent:",
+        "-Xrunjdwp",
+        "-Xdebug",
+        "-Dcom.sun.management.jmxremote"
+    };
+    private static final long STARTUP_POLL_MILLIS = 50;
+
+    private CdsArchive() {}
+
+    // Runs the server in a JVM started with the archive and exits with its exit code. Returns without doing anything
+    // if this JVM is to run the server itself.
+    static void relaunch(final Path repoDir, final String[] args) {
+        if (Boolean.getBoolean(CHILD_PROPERTY)) {
+            signalStarted();
+            return;
+        }
+        if (MODE.equals("false") || Lightclip.isPatchOnly()) {
+            return;
+        }
+        final Kind kind = kind();
+        final String launchFingerprint = LaunchPlan.fingerprint(repoDir);
+        if (kind == null || launchFingerprint == null) {
+            Lightclip.logger.warn("Class data sharing needs a launch plan and `lightclip.cds` to be true, archive or aot");
+            return;
+        }
+
+        final String java = ProcessHandle.current().info().command()
+            .orElse(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        final String classpath = System.getProperty("java.class.path");
+        final List<String> inputArguments = ManagementFactory.getRuntimeMXBean().getInputArguments();
+        if (inputArguments.contains("-XX:+AlwaysPreTouch")) {
+            Lightclip.logger.warn("Class data sharing is off with -XX:+AlwaysPreTouch, a second JVM would touch a second heap");
+            return;
+        }
+        final List<String> jvmArguments = new ArrayList<>();
+        final List<String> launcherOnly = new ArrayList<>();
+        for (final String argument : inputArguments) {
+            if (Arrays.stream(LAUNCHER_ONLY_FLAGS).anyMatch(argument::startsWith)) {
+                launcherOnly.add(argument);
+            } else if (Arrays.stream(CDS_FLAGS).noneMatch(argument::startsWith)) {
+                jvmArguments.add(argument);
+            }
+        }
+        if (!launcherOnly.isEmpty()) {
+            Lightclip.logger.warn("Starting the server JVM without {}, they only apply to the launcher", launcherOnly);
+        }
+        final List<String> sharedFiles = jvmArguments.stream().filter(CdsArchive::isSharedFile).toList();
+        if (!sharedFiles.isEmpty()) {
+            Lightclip.logger.warn("The launcher and the server JVM both write the files of {}, add %p to their names to keep them apart", sharedFiles);
+        }
+
+        final String fingerprint = fingerprint(launchFingerprint, kind, java, classpath, jvmArguments);
+        final Path archive = repoDir.resolve(kind.fileName);
+        final boolean trained = Files.isRegularFile(archive) && fingerprint.equals(readState(repoDir));
+        final Path output = Util.tempFile(archive);
+        final Path configuration = repoDir.resolve("server.aotconf");
+        final Path started = repoDir.resolve(STARTED_FILE_NAME);
+
+        final List<String> command = new ArrayList<>();
+        command.add(java);
+        command.addAll(jvmArguments);
+        command.add("-D" + CHILD_PROPERTY + "=true");
+        command.add("-D" + STARTED_PROPERTY + "=" + started.toAbsolutePath());
+        if (trained) {
+            command.add(kind.useFlag + archive);
+        } else {
+            Lightclip.logger.info("Training the class data sharing archive, it is written when the server stops");
+            command.addAll(kind.trainFlags(output, configuration));
+        }
+        command.add("-cp");
+        command.add(classpath);
+        command.add(Lightclip.class.getName());
+        command.addAll(Arrays.asList(args));
+
+        final Process process;
+        try {
+            Files.deleteIfExists(started);
+            process = new ProcessBuilder(command).inheritIO().start();
+        } catch (final IOException e) {
+            Lightclip.logger.warn("Failed to relaunch the server with class data sharing, starting it in this JVM");
+            return;
+        }
+
+        // Stopping the launcher stops the server, and waits until the archive is in place
+        final CountDownLatch done = new CountDownLatch(1);
+        final Thread shutdownHook = new Thread(() -> {
+            process.destroy();
+            try {
+                process.waitFor();
+                done.await();
+            } catch (final InterruptedException ignored) {
+            }
+        }, "Lightclip CDS");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+        final boolean rejected = awaitStart(process, started);
+        try {
+            Files.deleteIfExists(started);
+            if (rejected) {
+                Files.deleteIfExists(output);
+                Files.deleteIfExists(configuration);
+            }
+        } catch (final IOException ignored) {
+        }
+        if (rejected) {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            Lightclip.logger.warn("The server JVM exited with code {} before it started, starting the server in this JVM", process.exitValue());
+            return;
+        }
+        // The server JVM records into the same files
+        if (FlightRecorder.isInitialized()) {
+            FlightRecorder.getFlightRecorder().getRecordings().forEach(Recording::close);
+        }
+
+        int exitCode;
+        try {
+            exitCode = process.waitFor();
+        } catch (final InterruptedException e) {
+            exitCode = 1;
+        }
+        if (!trained) {
+            saveArchive(repoDir, kind, java, classpath, output, configuration, archive, fingerprint);
+        }
+        done.countDown();
+        System.exit(exitCode);
+    }
+
+    private static void signalStarted() {
+        final String started = System.getProperty(STARTED_PROPERTY);
+        if (started == null) {
+            return;
+        }
+        try {
+            Files.createFile(Path.of(started));
+        } catch (final IOException e) {
+            Lightclip.logger.warn("Failed to signal the launcher that the server JVM started: {}", e.toString());
+        }
+    }
+
+    // Waits until the server JVM signals that it runs Lightclip. Returns true if it exited with an error before that
+    private static boolean awaitStart(final Process process, final Path started) {
+        try {
+            while (!process.waitFor(STARTUP_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (Files.exists(started)) {
+                    return false;
+                }
+            }
+        } catch (final InterruptedException e) {
+            return false;
+        }
+        return process.exitValue() != 0 && Files.notExists(started);
+    }
+
+    // Log and heap dump files of the launcher's flags, which the server JVM would write as well
+    private static boolean isSharedFile(final String argument) {
+        if (argument.contains("%p")) {
+            return false;
+        }
+        if (argument.startsWith("-Xloggc:")) {
+            return true;
+        }
+        if (argument.startsWith("-XX:HeapDumpPath=")) {
+            // A directory gets a dump named after the process
+            return !Files.isDirectory(Path.of(argument.substring("-XX:HeapDumpPath=".length())));
+        }
+        if (argument.startsWith("-Xlog:")) {
+            // -Xlog:<selections>:<output>:..., an output that isn't stdout or stderr is a file
+            final String[] parts = argument.split(":");
+            return parts.length > 2 && !parts[2].isEmpty() && !parts[2].equals("stdout") && !parts[2].equals("stderr");
+        }
+        return false;
+    }
+
+    private static Kind kind() {
+        final boolean aotCache = Runtime.version().feature() >= 24;
+        return switch (MODE) {
+            case "true", "archive" -> Kind.ARCHIVE;
+            case "aot" -> {
+                if (!aotCache) {
+                    Lightclip.logger.warn("AOT caches need JDK 24 or newer, using a CDS archive instead");
+                }
+                yield aotCache ? Kind.AOT_CACHE : Kind.ARCHIVE;
+            }
+            default -> null;
+        };
+    }
+
+    private static void saveArchive(
+        final Path repoDir,
+        final Kind kind,
+        final String java,
+        final String classpath,
+        final Path output,
+        final Path configuration,
+        final Path archive,
+        final String fingerprint
+    ) {
+        try {
+            // JDK 24 only records the configuration while the server runs, the cache is created from it afterwards
+            if (kind == Kind.AOT_CACHE && Runtime.version().feature() == 24 && Files.isRegularFile(configuration)) {
+                final int exitCode = new ProcessBuilder(java, "-XX:AOTMode=create", "-XX:AOTConfiguration=" + configuration,
+                    "-XX:AOTCache=" + output, "-cp", classpath).inheritIO().start().waitFor();
+                Files.deleteIfExists(configuration);
+                if (exitCode != 0) {
+                    Files.deleteIfExists(output);
+                }
+            }
+            if (!Files.isRegularFile(output) || Files.size(output) == 0) {
+                Lightclip.logger.warn("The JVM didn't write a class data sharing archive, the next run trains again");
+                return;
+            }
+            Util.moveAtomically(output, archive);
+
+            final Path stateFile = repoDir.resolve(STATE_FILE_NAME);
+            final Path tempFile = Util.tempFile(stateFile);
+            Files.writeString(tempFile, "fingerprint\t" + fingerprint + "\n");
+            Util.moveAtomically(tempFile, stateFile);
+            Lightclip.logger.info("Wrote class data sharing archive {}", archive);
+        } catch (final IOException | InterruptedException e) {
+            Lightclip.logger.warn("Failed to write class data sharing archive {}", archive);
+        }
+    }
+
+    private static String readState(final Path repoDir) {
+        final Path stateFile = repoDir.resolve(STATE_FILE_NAME);
+        if (Files.notExists(stateFile)) {
+            return null;
+        }
+        try (final BufferedReader reader = Files.newBufferedReader(stateFile)) {
+            final String line = reader.readLine();
+            return line != null && line.startsWith("fingerprint\t") ? line.substring("fingerprint\t".length()) : null;
+        } catch (final IOException e) {
+            return null;
+        }
+    }
+
+    // An archive only fits the JVM and class path it was dumped with, and most JVM flags have to match as well
+    private static String fingerprint(
+        final String launchFingerprint,
+        final Kind kind,
+        final String java,
+        final String classpath,
+        final List<String> jvmArguments
+    ) {
+        final StringBuilder builder = new StringBuilder()
+            .append(launchFingerprint).append('\n')
+            .append(kind).append('\n')
+            .append(java).append('\n')
+            .append(System.getProperty("java.vm.version")).append('\n')
+            .append(classpath).append('\n');
+        for (final String argument : jvmArguments) {
+            builder.append(argument).append('\n');
+        }
+        return Hashing.toHex(Hashing.sha256(builder.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private enum Kind {
+        ARCHIVE("server.jsa", "-XX:SharedArchiveFile="),
+        AOT_CACHE("server.aot", "-XX:AOTCache=");
+
+        private final String fileName;
+        private final String useFlag;
+
+        Kind(final String fileName, final String useFlag) {
+            this.fileName = fileName;
+            this.useFlag = useFlag;
+        }
+
+        List<String> trainFlags(final Path output, final Path configuration) {
+            if (this == ARCHIVE) {
+                return List.of("-XX:ArchiveClassesAtExit=" + output);
+            }
+            if (Runtime.version().feature() == 24) {
+                return List.of("-XX:AOTMode=record", "-XX:AOTConfiguration=" + configuration);
+            }
+            // From JDK 25 on the JVM creates the cache itself when it exits
+            return List.of("-XX:AOTCacheOutput=" + output);
+        }
+    }
+}
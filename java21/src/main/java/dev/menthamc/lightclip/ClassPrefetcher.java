@@ -0,0 +1,187 @@
+package dev.menthamc.lightclip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// The server loads its classes in nearly the same order on every boot. The order of the last boot is kept in the repo
+// dir, and on the next one background threads read the classes in that order ahead of the server, which turns the
+// random reads of a cold page cache into a sequential walk that is done before most classes are asked for.
+// The mixin class loader takes the bytes themselves from a buffer of at most `lightclip.prefetch.bufferMiB`, a plain
+// class loader leaves reading and defining classes to URLClassLoader, so for it the classes are only read to warm the
+// page cache. Hits and misses are logged when recording stops, set `lightclip.prefetch` to false to turn it off.
+public final class ClassPrefetcher {
+
+    private static final String FILE_NAME = "class-load.profile";
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("lightclip.prefetch", "true"));
+    private static final int BUFFER_KIB = Integer.getInteger("lightclip.prefetch.bufferMiB", 64) * 1024;
+    private static final int THREADS = 2;
+    // Classes loaded after this are left out of the profile, by then the server has started
+    private static final long RECORD_SECONDS = 120;
+    private static final int MAX_CLASSES = 65536;
+
+    // A class the loader asked for, and one that was read for the page cache only
+    private static final Object REQUESTED = new Object();
+    private static final Object WARMED = new Object();
+
+    private final Path file;
+    private final URLClassLoader classLoader;
+    private final boolean keepBytes;
+    private final List<String> profile;
+    private final AtomicInteger cursor = new AtomicInteger();
+    private final Semaphore buffer = new Semaphore(BUFFER_KIB);
+    // Holds the prefetched bytes, WARMED, or REQUESTED once the loader got to the class
+    private final Map<String, Object> classes = new ConcurrentHashMap<>();
+    private final Queue<String> loaded = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger loadedCount = new AtomicInteger();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    private ClassPrefetcher(final Path file, final URLClassLoader classLoader, final boolean keepBytes, final List<String> profile) {
+        this.file = file;
+        this.classLoader = classLoader;
+        this.keepBytes = keepBytes;
+        this.profile = profile;
+    }
+
+    public static ClassPrefetcher start(final Path repoDir, final URLClassLoader classLoader, final boolean keepBytes) {
+        if (!ENABLED) {
+            return null;
+        }
+
+        final Path file = repoDir.resolve(FILE_NAME);
+        List<String> profile = List.of();
+        if (Files.exists(file)) {
+            try {
+                profile = Files.readAllLines(file);
+            } catch (final IOException e) {
+                Lightclip.logger.warn("Ignoring unreadable class load profile {}", file);
+            }
+        }
+
+        final ClassPrefetcher prefetcher = new ClassPrefetcher(file, classLoader, keepBytes, profile);
+        final ThreadFactory threadFactory = Workers.threadFactory("Class Prefetch");
+        for (int i = 0; i < (profile.isEmpty() ? 0 : THREADS); i++) {
+            threadFactory.newThread(prefetcher::prefetch).start();
+        }
+        threadFactory.newThread(() -> {
+            try {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(RECORD_SECONDS));
+            } catch (final InterruptedException e) {
+                return;
+            }
+            prefetcher.finish();
+        }).start();
+        Runtime.getRuntime().addShutdownHook(new Thread(prefetcher::finish, "Lightclip Class Prefetch"));
+        return prefetcher;
+    }
+
+    // The prefetched bytes of the class, or null if the loader has to read it itself
+    public byte[] take(final String name) {
+        if (this.finished.get()) {
+            return null;
+        }
+        if (this.loadedCount.incrementAndGet() <= MAX_CLASSES) {
+            this.loaded.add(name);
+        }
+
+        final Object previous = this.classes.put(name, REQUESTED);
+        if (previous instanceof final byte[] bytes) {
+            this.hits.incrementAndGet();
+            this.buffer.release(kibibytes(bytes));
+            return bytes;
+        }
+        if (previous == WARMED) {
+            this.hits.incrementAndGet();
+        } else if (previous == null) {
+            this.misses.incrementAndGet();
+        }
+        return null;
+    }
+
+    private void prefetch() {
+        int index;
+        while (!this.finished.get() && (index = this.cursor.getAndIncrement()) < this.profile.size()) {
+            final String name = this.profile.get(index);
+            if (this.classes.containsKey(name)) {
+                continue;
+            }
+            final URL resource = this.classLoader.findResource(name.replace('.', '/') + ".class");
+            if (resource == null) {
+                continue;
+            }
+
+            final byte[] bytes;
+            try (final InputStream in = resource.openStream()) {
+                bytes = in.readAllBytes();
+            } catch (final IOException e) {
+                continue;
+            }
+            if (!this.keepBytes) {
+                this.classes.putIfAbsent(name, WARMED);
+                continue;
+            }
+
+            // Stay at most a buffer ahead of the loader
+            final int size = kibibytes(bytes);
+            try {
+                while (!this.buffer.tryAcquire(size, 100, TimeUnit.MILLISECONDS)) {
+                    if (this.finished.get()) {
+                        return;
+                    }
+                }
+            } catch (final InterruptedException e) {
+                return;
+            }
+            // The loader may have read the class itself in the meantime
+            if (this.classes.putIfAbsent(name, bytes) != null) {
+                this.buffer.release(size);
+            }
+        }
+    }
+
+    private void finish() {
+        if (!this.finished.compareAndSet(false, true)) {
+            return;
+        }
+
+        int unused = 0;
+        for (final Object value : this.classes.values()) {
+            if (value != REQUESTED) {
+                unused++;
+            }
+        }
+        // Whatever the loader didn't take by now is not going to be asked for soon
+        this.classes.clear();
+        if (!this.profile.isEmpty()) {
+            Lightclip.logger.info("Class prefetch: {} hits, {} misses, {} prefetched but not loaded", this.hits.get(), this.misses.get(), unused);
+        }
+
+        try {
+            final Path tempFile = Util.tempFile(this.file);
+            Files.write(tempFile, new ArrayList<>(this.loaded));
+            Util.moveAtomically(tempFile, this.file);
+        } catch (final IOException e) {
+            Lightclip.logger.warn("Failed to write class load profile {}", this.file);
+        }
+    }
+
+    private static int kibibytes(final byte[] bytes) {
+        return Math.min((bytes.length + 1023) / 1024, BUFFER_KIB);
+    }
+}
@@ -1,69 +1,104 @@
 package dev.menthamc.lightclip;
 
+import dev.menthamc.lightclip.jfr.DownloadEvent;
+import dev.menthamc.lightclip.jfr.Events;
+
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
-import java.nio.channels.Channels;
-import java.nio.channels.FileChannel;
-import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
-import static java.nio.file.StandardOpenOption.CREATE;
-import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
-import static java.nio.file.StandardOpenOption.WRITE;
-
-public record DownloadContext(byte[] hash, URL url, String fileName) {
+// A download context may list several mirrors of the same file, one per line, which are raced against each other
+public record DownloadContext(byte[] hash, List<URL> urls, String fileName) {
 
     public Path getOutputFile(final Path outputDir) {
         final Path cacheDir = outputDir.resolve("cache");
         return cacheDir.resolve(this.fileName);
     }
 
-    public static DownloadContext parseLine(final String line) {
-        if (line == null || line.isBlank()) {
+    public static DownloadContext parse(final String text) {
+        if (text == null || text.isBlank()) {
             return null;
         }
 
+        DownloadContext context = null;
+        for (final String mirrorLine : text.split("\\R")) {
+            if (mirrorLine.isBlank()) {
+                continue;
+            }
+            final DownloadContext mirror = parseMirror(mirrorLine);
+            if (context == null) {
+                context = mirror;
+            } else if (Arrays.equals(context.hash, mirror.hash) && context.fileName.equals(mirror.fileName)) {
+                final List<URL> urls = new ArrayList<>(context.urls);
+                urls.addAll(mirror.urls);
+                context = new DownloadContext(context.hash, List.copyOf(urls), context.fileName);
+            } else {
+                throw new IllegalStateException("All mirrors in a download-context must share the same hash and file name: " + mirrorLine);
+            }
+        }
+        return context;
+    }
+
+    private static DownloadContext parseMirror(final String line) {
         final String[] parts = line.split("\t");
         if (parts.length != 3) {
             throw new IllegalStateException("Invalid download-context line: " + line);
         }
 
         try {
-            return new DownloadContext(Util.fromHex(parts[0]), URI.create(parts[1]).toURL(), parts[2]);
+            return new DownloadContext(Util.fromHex(parts[0]), List.of(URI.create(parts[1]).toURL()), parts[2]);
         } catch (final MalformedURLException e) {
             throw new IllegalStateException("Unable to parse URL in download-context", e);
         }
     }
 
-    public void download(final Path outputDir) throws IOException {
+    public boolean isDownloaded(final Path outputDir, final VerificationManifest manifest) {
+        return manifest.isFileValid(this.getOutputFile(outputDir), this.hash);
+    }
+
+    public void download(final Path outputDir, final VerificationManifest manifest) throws IOException {
         final Path outputFile = this.getOutputFile(outputDir);
-        if (Files.exists(outputFile) && Util.isFileValid(outputFile, this.hash)) {
+        if (manifest.isFileValid(outputFile, this.hash)) {
             return;
         }
 
         if (!Files.isDirectory(outputFile.getParent())) {
             Files.createDirectories(outputFile.getParent());
         }
-        Files.deleteIfExists(outputFile);
-
-        Lightclip.logger.info("Downloading {}", this.fileName);
+        final Path tempFile = Util.tempFile(outputFile);
 
-        try (
-            final ReadableByteChannel source = Channels.newChannel(this.url.openStream());
-            final FileChannel fileChannel = FileChannel.open(outputFile, CREATE, WRITE, TRUNCATE_EXISTING)
-        ) {
-            fileChannel.transferFrom(source, 0, Long.MAX_VALUE);
+        final DownloadEvent event = Events.download();
+        final byte[] writtenHash;
+        try (final BootReport.Phase ignored = BootReport.phase("download", this.fileName)) {
+            writtenHash = Downloader.download(this.fileName, this.hash, this.urls, tempFile);
         } catch (final IOException e) {
+            // The partial file is kept, a chunked download picks up from where it stopped
             Lightclip.logger.info("Failed to download {}", this.fileName);
-            e.printStackTrace();
-            System.exit(1);
+            commit(event, this.fileName, tempFile, false);
+            throw e;
         }
+        commit(event, this.fileName, tempFile, Arrays.equals(this.hash, writtenHash));
 
-        if (!Util.isFileValid(outputFile, this.hash)) {
+        if (!Arrays.equals(this.hash, writtenHash)) {
+            Files.deleteIfExists(tempFile);
             throw new IllegalStateException("Hash check failed for downloaded file " + this.fileName);
         }
+        Util.moveAtomically(tempFile, outputFile);
+        manifest.record(outputFile, this.hash);
+    }
+
+    private static void commit(final DownloadEvent event, final String fileName, final Path file, final boolean success) throws IOException {
+        if (event != null && event.shouldCommit()) {
+            event.fileName = fileName;
+            event.size = Files.exists(file) ? Files.size(file) : 0;
+            event.success = success;
+            event.commit();
+        }
     }
 }
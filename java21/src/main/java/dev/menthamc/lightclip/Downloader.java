@@ -0,0 +1,425 @@
+package dev.menthamc.lightclip;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+// Downloads a file from whichever mirror answers first. All mirrors are connected to at once and the first one to
+// deliver data is streamed from, the others are dropped. When the mirror stalls or fails mid-download the remaining
+// mirrors are raced again, resuming from where the last one stopped if they support ranges.
+// Mirrors that support ranges are downloaded in chunks over several connections instead. Finished chunks are
+// recorded in a file next to the download, so an interrupted download picks up where it stopped on the next boot.
+final class Downloader {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = Integer.getInteger("lightclip.download.connectTimeout", 10_000);
+    // A mirror that sends nothing for this long is considered stalled
+    private static final int STALL_TIMEOUT_MILLIS = Integer.getInteger("lightclip.download.stallTimeout", 15_000);
+    private static final int CONNECTIONS = Math.max(1, Integer.getInteger("lightclip.download.connections", 4));
+    private static final long CHUNK_SIZE = Math.max(1, Integer.getInteger("lightclip.download.chunkSize", 4)) * 1024L * 1024L;
+    private static final int CHUNK_ATTEMPTS = 3;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private Downloader() {}
+
+    // Returns the SHA-256 of the downloaded file
+    static byte[] download(final String name, final byte[] hash, final List<URL> mirrors, final Path outputFile) throws IOException {
+        final List<URL> remaining = new ArrayList<>(mirrors);
+        final List<IOException> failures = new ArrayList<>();
+
+        Connection connection = race(remaining, 0, failures);
+        if (connection == null) {
+            // The file is left alone, a partial download stays around for the next boot
+            throw failure(name, mirrors, failures);
+        }
+        if (isChunked(connection)) {
+            connection.close();
+            Lightclip.logger.info("Downloading {} from {} over {} connections", name, connection.url().getHost(), CONNECTIONS);
+
+            // The winner is tried first for every chunk, the other mirrors take over chunks it fails
+            final List<URL> chunkMirrors = new ArrayList<>(remaining);
+            chunkMirrors.remove(connection.url());
+            chunkMirrors.add(0, connection.url());
+            return downloadChunks(hash, chunkMirrors, connection.length(), outputFile);
+        }
+
+        // Only a mirror that is already streaming the whole file replaces what is there
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        try (final FileChannel output = FileChannel.open(outputFile, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            Files.deleteIfExists(chunkFile(outputFile));
+            final MessageDigest digest = Hashing.newSha256();
+            long written = 0;
+
+            while (connection != null) {
+                if (written > 0 && !connection.resumed()) {
+                    // The mirror ignored our range, start over
+                    output.truncate(0);
+                    output.position(0);
+                    digest.reset();
+                    written = 0;
+                }
+                if (written == 0) {
+                    Lightclip.logger.info("Downloading {} from {}", name, connection.url().getHost());
+                } else {
+                    Lightclip.logger.info("Resuming {} from {} at {} bytes", name, connection.url().getHost(), written);
+                }
+
+                try (final Connection current = connection) {
+                    written += write(output, digest, current.first(), current.firstLength());
+                    int read;
+                    while ((read = current.in().read(buffer)) != -1) {
+                        written += write(output, digest, buffer, read);
+                    }
+                    return digest.digest();
+                } catch (final IOException e) {
+                    Lightclip.logger.warn("Download of {} from {} failed after {} bytes: {}", name, connection.url().getHost(), written, e.toString());
+                    failures.add(e);
+                    remaining.remove(connection.url());
+                }
+
+                connection = remaining.isEmpty() ? null : race(remaining, written, failures);
+            }
+        }
+
+        throw failure(name, mirrors, failures);
+    }
+
+    private static IOException failure(final String name, final List<URL> mirrors, final List<IOException> failures) {
+        final IOException failure = new IOException("Failed to download " + name + " from any of " + mirrors.size() + " mirrors");
+        failures.forEach(failure::addSuppressed);
+        return failure;
+    }
+
+    private static boolean isChunked(final Connection connection) {
+        return CONNECTIONS > 1
+            && connection.connection() != null
+            && connection.acceptsRanges()
+            && connection.length() >= 2 * CHUNK_SIZE;
+    }
+
+    private static byte[] downloadChunks(final byte[] hash, final List<URL> mirrors, final long length, final Path outputFile) throws IOException {
+        final Path chunkFile = chunkFile(outputFile);
+        final int chunkCount = (int) ((length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        final String header = "chunks\t" + Hashing.toHex(hash) + "\t" + length + "\t" + CHUNK_SIZE;
+
+        try (final FileChannel output = FileChannel.open(outputFile, CREATE, READ, WRITE)) {
+            BitSet done = readChunkFile(chunkFile, header, output, length);
+            if (done == null) {
+                done = new BitSet(chunkCount);
+                output.truncate(0);
+                Files.writeString(chunkFile, header + System.lineSeparator());
+            } else if (!done.isEmpty()) {
+                Lightclip.logger.info("Resuming download with {} of {} chunks already done", done.cardinality(), chunkCount);
+            }
+
+            try (final BufferedWriter chunkWriter = Files.newBufferedWriter(chunkFile, APPEND)) {
+                final List<Callable<Void>> tasks = new ArrayList<>();
+                for (int i = done.nextClearBit(0); i < chunkCount; i = done.nextClearBit(i + 1)) {
+                    final int index = i;
+                    tasks.add(() -> {
+                        final byte[] chunkHash;
+                        try (final BootReport.Phase ignored = BootReport.phase("downloadChunk", String.valueOf(index))) {
+                            chunkHash = fetchChunk(mirrors, output, index, length);
+                        }
+                        synchronized (chunkWriter) {
+                            chunkWriter.write(index + "\t" + Hashing.toHex(chunkHash));
+                            chunkWriter.newLine();
+                            chunkWriter.flush();
+                        }
+                        return null;
+                    });
+                }
+                Workers.invokeAll("Downloader", CONNECTIONS, tasks);
+            }
+            output.truncate(length);
+            output.force(false);
+        }
+
+        // Chunk hashes can't be combined, the finished file is hashed once as a whole
+        final byte[] fileHash = Hashing.sha256(outputFile);
+        Files.deleteIfExists(chunkFile);
+        return fileHash;
+    }
+
+    private static byte[] fetchChunk(final List<URL> mirrors, final FileChannel output, final int index, final long length) throws IOException {
+        final long start = index * CHUNK_SIZE;
+        final long end = Math.min(start + CHUNK_SIZE, length) - 1;
+
+        IOException failure = null;
+        for (int attempt = 0; attempt < Math.max(CHUNK_ATTEMPTS, mirrors.size()); attempt++) {
+            final URL mirror = mirrors.get(attempt % mirrors.size());
+            try {
+                return fetchRange(mirror, output, start, end);
+            } catch (final IOException e) {
+                Lightclip.logger.warn("Chunk {} from {} failed: {}", index, mirror.getHost(), e.toString());
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        throw failure;
+    }
+
+    private static byte[] fetchRange(final URL url, final FileChannel output, final long start, final long end) throws IOException {
+        if (!(url.openConnection() instanceof final HttpURLConnection connection)) {
+            throw new IOException(url + " does not support range requests");
+        }
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(STALL_TIMEOUT_MILLIS);
+        connection.setRequestProperty("Range", "bytes=" + start + "-" + end);
+
+        try {
+            final int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_PARTIAL
+                || !String.valueOf(connection.getHeaderField("Content-Range")).startsWith("bytes " + start + "-" + end + "/")) {
+                throw new IOException(url + " responded with " + status + " to a range request");
+            }
+
+            final MessageDigest digest = Hashing.newSha256();
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            long position = start;
+            try (final InputStream in = connection.getInputStream()) {
+                int read;
+                while (position <= end && (read = in.read(buffer, 0, (int) Math.min(buffer.length, end + 1 - position))) != -1) {
+                    digest.update(buffer, 0, read);
+                    final ByteBuffer data = ByteBuffer.wrap(buffer, 0, read);
+                    while (data.hasRemaining()) {
+                        position += output.write(data, position);
+                    }
+                }
+            }
+            BootReport.bytesWritten(position - start);
+            if (position != end + 1) {
+                throw new IOException("Chunk ended after " + (position - start) + " of " + (end + 1 - start) + " bytes");
+            }
+            return digest.digest();
+        } catch (final IOException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    // Returns the chunks that are already done, or null if the download has to start over.
+    // Recorded chunks are hashed again, the file may have been touched since they were written
+    private static BitSet readChunkFile(final Path chunkFile, final String header, final FileChannel output, final long length) throws IOException {
+        if (Files.notExists(chunkFile)) {
+            return null;
+        }
+
+        final BitSet done = new BitSet();
+        try (final BufferedReader reader = Files.newBufferedReader(chunkFile)) {
+            if (!header.equals(reader.readLine())) {
+                return null;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] parts = line.split("\t");
+                if (parts.length != 2) {
+                    continue;
+                }
+                // A line torn by a crash only loses its own chunk
+                final int index;
+                final byte[] chunkHash;
+                try {
+                    index = Integer.parseInt(parts[0]);
+                    chunkHash = Util.fromHex(parts[1]);
+                } catch (final IllegalArgumentException e) {
+                    continue;
+                }
+                final long start = index * CHUNK_SIZE;
+                final long size = Math.min(CHUNK_SIZE, length - start);
+                if (index < 0 || start >= length || start + size > output.size()) {
+                    continue;
+                }
+
+                final MessageDigest digest = Hashing.newSha256();
+                digest.update(output.map(FileChannel.MapMode.READ_ONLY, start, size));
+                if (Arrays.equals(digest.digest(), chunkHash)) {
+                    done.set(index);
+                }
+            }
+        }
+        return done;
+    }
+
+    private static Path chunkFile(final Path outputFile) {
+        return outputFile.resolveSibling(outputFile.getFileName() + ".chunks");
+    }
+
+    // Connects to all mirrors at once and returns the first one that delivers data, null if all of them failed.
+    // Mirrors that failed are removed from the list
+    private static Connection race(final List<URL> mirrors, final long offset, final List<IOException> failures) {
+        if (mirrors.size() == 1) {
+            try {
+                return connect(mirrors.get(0), offset, null);
+            } catch (final IOException e) {
+                failures.add(e);
+                mirrors.clear();
+                return null;
+            }
+        }
+
+        final ExecutorService pool = Executors.newFixedThreadPool(mirrors.size(), Workers.threadFactory("Downloader"));
+        final CompletableFuture<Connection> winner = new CompletableFuture<>();
+        final Queue<HttpURLConnection> opened = new ConcurrentLinkedQueue<>();
+        final Set<URL> failed = ConcurrentHashMap.newKeySet();
+        final Queue<IOException> errors = new ConcurrentLinkedQueue<>();
+        final AtomicInteger pending = new AtomicInteger(mirrors.size());
+
+        try {
+            for (final URL mirror : mirrors) {
+                pool.execute(() -> {
+                    try {
+                        final Connection connection = connect(mirror, offset, opened);
+                        if (!winner.complete(connection)) {
+                            connection.close();
+                        }
+                    } catch (final IOException e) {
+                        if (winner.isDone()) {
+                            // Lost the race and was disconnected, which doesn't make the mirror broken
+                            return;
+                        }
+                        failed.add(mirror);
+                        errors.add(e);
+                        if (pending.decrementAndGet() == 0) {
+                            winner.complete(null);
+                        }
+                        return;
+                    }
+                    pending.decrementAndGet();
+                });
+            }
+
+            final Connection connection = winner.get();
+
+            // Drop the slower mirrors, they are still connecting or already lost
+            for (final HttpURLConnection other : opened) {
+                if (connection == null || other != connection.connection()) {
+                    other.disconnect();
+                }
+            }
+            return connection;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            opened.forEach(HttpURLConnection::disconnect);
+            return null;
+        } catch (final ExecutionException e) {
+            throw Util.sneakyThrow(e.getCause());
+        } finally {
+            pool.shutdown();
+            mirrors.removeAll(failed);
+            failures.addAll(errors);
+        }
+    }
+
+    private static Connection connect(final URL url, final long offset, final Queue<HttpURLConnection> opened) throws IOException {
+        final URLConnection urlConnection = url.openConnection();
+        if (!(urlConnection instanceof final HttpURLConnection connection)) {
+            // Not HTTP, nothing to race or resume
+            final InputStream in = urlConnection.getInputStream();
+            in.skipNBytes(offset);
+            return first(url, null, in, true, false, -1);
+        }
+        if (opened != null) {
+            opened.add(connection);
+        }
+
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(STALL_TIMEOUT_MILLIS);
+        if (offset > 0) {
+            connection.setRequestProperty("Range", "bytes=" + offset + "-");
+        }
+
+        try {
+            final int status = connection.getResponseCode();
+            final boolean resumed = status == HttpURLConnection.HTTP_PARTIAL
+                && String.valueOf(connection.getHeaderField("Content-Range")).startsWith("bytes " + offset + "-");
+            if (status != HttpURLConnection.HTTP_OK && !resumed) {
+                throw new IOException(url + " responded with " + status);
+            }
+            final boolean acceptsRanges = "bytes".equalsIgnoreCase(connection.getHeaderField("Accept-Ranges"));
+            final long length = status == HttpURLConnection.HTTP_OK ? connection.getContentLengthLong() : -1;
+            return first(url, connection, connection.getInputStream(), resumed, acceptsRanges, length);
+        } catch (final IOException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    // Time to first byte is what decides the race, so a mirror only counts as connected once it sent data
+    private static Connection first(
+        final URL url,
+        final HttpURLConnection connection,
+        final InputStream in,
+        final boolean resumed,
+        final boolean acceptsRanges,
+        final long length
+    ) throws IOException {
+        final byte[] first = new byte[BUFFER_SIZE];
+        final int read = in.read(first);
+        return new Connection(url, connection, in, first, Math.max(read, 0), resumed, acceptsRanges, length);
+    }
+
+    private static int write(final FileChannel output, final MessageDigest digest, final byte[] buffer, final int length) throws IOException {
+        digest.update(buffer, 0, length);
+        final ByteBuffer data = ByteBuffer.wrap(buffer, 0, length);
+        while (data.hasRemaining()) {
+            output.write(data);
+        }
+        BootReport.bytesWritten(length);
+        return length;
+    }
+
+    private record Connection(
+        URL url,
+        HttpURLConnection connection,
+        InputStream in,
+        byte[] first,
+        int firstLength,
+        boolean resumed,
+        boolean acceptsRanges,
+        long length
+    ) implements Closeable {
+        @Override
+        public void close() throws IOException {
+            try {
+                this.in.close();
+            } finally {
+                if (this.connection != null) {
+                    this.connection.disconnect();
+                }
+            }
+        }
+    }
+}
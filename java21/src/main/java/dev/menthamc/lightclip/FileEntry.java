@@ -1,18 +1,17 @@
 package dev.menthamc.lightclip;
 
+import dev.menthamc.lightclip.jfr.ExtractFileEvent;
+import dev.menthamc.lightclip.jfr.Events;
 import org.leavesmc.leavesclip.mixin.MixinURLClassLoader;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
-import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
-import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
-import java.util.Map;
 
 import static java.nio.file.StandardOpenOption.CREATE;
 import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
@@ -20,6 +19,11 @@ import static java.nio.file.StandardOpenOption.WRITE;
 
 public record FileEntry(byte[] hash, String id, String path) {
 
+    // Serve unpatched libraries straight from our jar instead of extracting them. URLClassLoader treats their URLs as
+    // directories, so their classes come without the jar's manifest: packages have no implementation or specification
+    // attributes and aren't sealed. Each class is also opened twice, once to find it and once to read it
+    private static final boolean NESTED_LIBRARIES = Boolean.getBoolean("lightclip.nestedLibraries");
+
     public static FileEntry[] parse(final BufferedReader reader) throws IOException {
         var result = new FileEntry[8];
 
@@ -49,31 +53,47 @@ public record FileEntry(byte[] hash, String id, String path) {
         }
     }
 
-    public void extractFile(
-        final Map<String, URL> urls,
+    URL extractFile(
         final PatchEntry[] patches,
         final String targetName,
-        final Path originalRootDir,
+        final OriginalJar originalJar,
         final String baseDir,
-        final Path outputDir
+        final Path outputDir,
+        final VerificationManifest manifest
     ) throws IOException {
         for (final PatchEntry patch : patches) {
             if (patch.location().equals(targetName) && patch.outputPath().equals(this.path)) {
                 // This file will be created from a patch
-                return;
+                return null;
+            }
+        }
+
+        final ExtractFileEvent event = Events.extractFile();
+
+        if (NESTED_LIBRARIES && targetName.equals("libraries")) {
+            final URL nestedUrl = this.nestedUrl(baseDir, manifest);
+            if (nestedUrl != null) {
+                return this.extracted(event, targetName, "nested", nestedUrl);
             }
         }
 
         final Path outputFile = outputDir.resolve(this.path);
-        if (Files.exists(outputFile) && Util.isFileValid(outputFile, this.hash)) {
-            urls.put(this.path, outputFile.toUri().toURL());
-            return;
+        if (manifest.isFileValid(outputFile, this.hash)) {
+            return this.extracted(event, targetName, "verified", outputFile.toUri().toURL());
         }
 
         final String filePath = Util.endingSlash(baseDir) + this.path;
-        InputStream fileStream = MixinURLClassLoader.class.getResourceAsStream(filePath);
-        if (fileStream == null) {
-            // This file is not in our jar, but may be in the original
+
+        // Uncompressed entries of our own jar can be copied from their offset without going through the class loader
+        final ZipIndex bundle = ZipIndex.bundle();
+        final ZipIndex.Entry bundleEntry = bundle == null ? null : bundle.get(filePath.substring(1));
+        final boolean stored = bundleEntry != null && bundleEntry.method() == ZipIndex.STORED;
+
+        InputStream fileStream = stored ? null : MixinURLClassLoader.class.getResourceAsStream(filePath);
+        final boolean fromBundle = stored || fileStream != null;
+        if (!fromBundle) {
+            // This file is not in our jar, but may be in the original, which we have to wait for
+            final Path originalRootDir = originalJar.rootDir();
             if (originalRootDir == null) {
                 // no original jar was provided (we are not running in patcher mode)
                 // This is an invalid situation
@@ -91,20 +111,54 @@ public record FileEntry(byte[] hash, String id, String path) {
         if (!Files.isDirectory(outputFile.getParent())) {
             Files.createDirectories(outputFile.getParent());
         }
-        Files.deleteIfExists(outputFile);
-
-        try (
-            final InputStream stream = fileStream;
-            final ReadableByteChannel inputChannel = Channels.newChannel(stream);
-            final FileChannel outputChannel = FileChannel.open(outputFile, CREATE, WRITE, TRUNCATE_EXISTING)
-        ) {
-            outputChannel.transferFrom(inputChannel, 0, Long.MAX_VALUE);
+
+        // Write next to the target and only move it into place once the hash matches
+        final Path tempFile = Util.tempFile(outputFile);
+        final byte[] writtenHash;
+        try (final FileChannel outputChannel = FileChannel.open(tempFile, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            if (stored) {
+                writtenHash = bundle.transferStored(bundleEntry, outputChannel);
+            } else {
+                writtenHash = Hashing.copy(fileStream, outputChannel);
+            }
         }
 
-        if (!Util.isFileValid(outputFile, this.hash)) {
+        if (!Arrays.equals(this.hash, writtenHash)) {
+            Files.deleteIfExists(tempFile);
             throw new IllegalStateException("Hash check failed for extract filed " + outputFile);
         }
+        Util.moveAtomically(tempFile, outputFile);
+        manifest.record(outputFile, this.hash);
 
-        urls.put(this.path, outputFile.toUri().toURL());
+        return this.extracted(event, targetName, fromBundle ? "bundle" : "original", outputFile.toUri().toURL());
+    }
+
+    private URL extracted(final ExtractFileEvent event, final String targetName, final String source, final URL url) {
+        if (event != null && event.shouldCommit()) {
+            event.path = this.path;
+            event.target = targetName;
+            event.source = source;
+            event.commit();
+        }
+        return url;
+    }
+
+    // Only uncompressed jars can be read in place, anything else is extracted as usual
+    private URL nestedUrl(final String baseDir, final VerificationManifest manifest) {
+        final ZipIndex bundle = ZipIndex.bundle();
+        if (bundle == null) {
+            return null;
+        }
+
+        final String entryName = (Util.endingSlash(baseDir) + this.path).substring(1);
+        final ZipIndex.Entry entry = bundle.get(entryName);
+        if (entry == null || entry.method() != ZipIndex.STORED) {
+            return null;
+        }
+
+        if (!manifest.isEntryValid(bundle.file(), entryName, this.hash, () -> Arrays.equals(this.hash, bundle.sha256(entry)))) {
+            throw new IllegalStateException("Hash check failed for bundled file " + entryName);
+        }
+        return NestedJarHandler.urlOf(entryName);
     }
 }
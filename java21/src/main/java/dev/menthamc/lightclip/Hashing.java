@@ -0,0 +1,94 @@
+package dev.menthamc.lightclip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+public final class Hashing {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // MessageDigest is not thread-safe, so every thread gets its own digests and read buffer.
+    // Files are streamed through the fixed size buffer instead of being read into memory first
+    private static final ThreadLocal<MessageDigest> sha256Digest = ThreadLocal.withInitial(() -> createDigest("SHA-256"));
+    private static final ThreadLocal<MessageDigest> md5Digest = ThreadLocal.withInitial(() -> createDigest("MD5"));
+    private static final ThreadLocal<byte[]> buffer = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    private Hashing() {}
+
+    public static byte[] sha256(final byte[] data) {
+        return sha256Digest.get().digest(data);
+    }
+
+    public static byte[] sha256(final Path file) throws IOException {
+        return digest(sha256Digest.get(), Files.newInputStream(file));
+    }
+
+    public static byte[] sha256(final InputStream in) throws IOException {
+        return digest(sha256Digest.get(), in);
+    }
+
+    public static byte[] md5(final Path file) throws IOException {
+        return digest(md5Digest.get(), Files.newInputStream(file));
+    }
+
+    // Copies the stream into the channel and returns the SHA-256 of everything written,
+    // so a freshly written file doesn't have to be read back to verify it
+    public static byte[] copy(final InputStream in, final WritableByteChannel out) throws IOException {
+        final MessageDigest digest = newSha256();
+        final byte[] buf = buffer.get();
+        try (in) {
+            int read;
+            long total = 0;
+            while ((read = in.read(buf)) != -1) {
+                digest.update(buf, 0, read);
+                final ByteBuffer data = ByteBuffer.wrap(buf, 0, read);
+                while (data.hasRemaining()) {
+                    out.write(data);
+                }
+                total += read;
+            }
+            BootReport.bytesRead(total);
+            BootReport.bytesWritten(total);
+        }
+        return digest.digest();
+    }
+
+    // A digest of its own for hashing output while it is written, the thread's digest may be in use meanwhile
+    public static MessageDigest newSha256() {
+        return createDigest("SHA-256");
+    }
+
+    public static String toHex(final byte[] hash) {
+        return HexFormat.of().formatHex(hash);
+    }
+
+    private static byte[] digest(final MessageDigest digest, final InputStream in) throws IOException {
+        final byte[] buf = buffer.get();
+        digest.reset();
+        try (in) {
+            int read;
+            long total = 0;
+            while ((read = in.read(buf)) != -1) {
+                digest.update(buf, 0, read);
+                total += read;
+            }
+            BootReport.bytesRead(total);
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest createDigest(final String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (final NoSuchAlgorithmException e) {
+            throw Util.fail("Could not create hashing instance", e);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package dev.menthamc.lightclip;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// The class path and main class resolved by the last boot. As long as the launcher jar and the system properties
+// that shape the class path are the same, and the verification manifest still vouches for every file on it,
+// a warm boot can go straight to building the class loader.
+record LaunchPlan(String mainClass, URL[] urls) {
+
+    private static final String FILE_NAME = "launch.plan";
+
+    // Set `lightclip.launchPlan` to false to resolve the class path on every boot
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("lightclip.launchPlan", "true"));
+
+    private static final String[] FINGERPRINT_PROPERTIES = {
+        "bundlerMainClass",
+        "lightclip.downloadContext",
+        "lightclip.nestedLibraries"
+    };
+
+    static LaunchPlan load(final Path repoDir, final VerificationManifest manifest) {
+        final String fingerprint = fingerprint(repoDir);
+        final Path file = repoDir.resolve(FILE_NAME);
+        if (fingerprint == null || Files.notExists(file)) {
+            return null;
+        }
+
+        try (final BufferedReader reader = Files.newBufferedReader(file)) {
+            if (!("fingerprint\t" + fingerprint).equals(reader.readLine())) {
+                return null;
+            }
+            final String mainLine = reader.readLine();
+            if (mainLine == null || !mainLine.startsWith("main\t")) {
+                return null;
+            }
+
+            final List<URL> urls = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] parts = line.split("\t");
+                if (parts.length != 3) {
+                    return null;
+                }
+                final URL url = switch (parts[0]) {
+                    case "file" -> fileUrl(Path.of(parts[2]), Util.fromHex(parts[1]), manifest);
+                    case "nested" -> nestedUrl(parts[2], Util.fromHex(parts[1]), manifest);
+                    default -> null;
+                };
+                if (url == null) {
+                    return null;
+                }
+                urls.add(url);
+            }
+            return new LaunchPlan(mainLine.substring("main\t".length()), urls.toArray(new URL[0]));
+        } catch (final IOException | IllegalArgumentException e) {
+            // A broken plan only means we resolve the class path again
+            Lightclip.logger.warn("Ignoring unreadable launch plan {}", file);
+            return null;
+        }
+    }
+
+    void save(final Path repoDir, final VerificationManifest manifest) {
+        final String fingerprint = fingerprint(repoDir);
+        if (fingerprint == null) {
+            return;
+        }
+
+        final List<String> lines = new ArrayList<>(this.urls.length + 2);
+        lines.add("fingerprint\t" + fingerprint);
+        lines.add("main\t" + this.mainClass);
+        for (final URL url : this.urls) {
+            final String line = describe(url, manifest);
+            if (line == null) {
+                // Not everything on the class path went through the manifest, so the plan couldn't be verified
+                return;
+            }
+            lines.add(line);
+        }
+
+        final Path file = repoDir.resolve(FILE_NAME);
+        final Path tempFile = Util.tempFile(file);
+        try (final BufferedWriter writer = Files.newBufferedWriter(tempFile)) {
+            for (final String line : lines) {
+                writer.write(line);
+                writer.newLine();
+            }
+        } catch (final IOException e) {
+            Lightclip.logger.warn("Failed to write launch plan {}", file);
+            return;
+        }
+        try {
+            Util.moveAtomically(tempFile, file);
+        } catch (final IOException e) {
+            Lightclip.logger.warn("Failed to write launch plan {}", file);
+        }
+    }
+
+    private static URL fileUrl(final Path file, final byte[] hash, final VerificationManifest manifest) throws IOException {
+        return manifest.isFileValid(file, hash) ? file.toUri().toURL() : null;
+    }
+
+    private static URL nestedUrl(final String entryName, final byte[] hash, final VerificationManifest manifest) {
+        final ZipIndex bundle = ZipIndex.bundle();
+        final ZipIndex.Entry entry = bundle == null ? null : bundle.get(entryName);
+        if (entry == null) {
+            return null;
+        }
+        return manifest.isEntryValid(bundle.file(), entryName, hash, () -> Arrays.equals(hash, bundle.sha256(entry)))
+            ? NestedJarHandler.urlOf(entryName)
+            : null;
+    }
+
+    private static String describe(final URL url, final VerificationManifest manifest) {
+        if (NestedJarHandler.PROTOCOL.equals(url.getProtocol())) {
+            final ZipIndex bundle = ZipIndex.bundle();
+            final String entryName = NestedJarHandler.entryNameOf(url);
+            final byte[] hash = bundle == null ? null : manifest.recordedHash(bundle.file(), entryName);
+            return hash == null ? null : "nested\t" + Hashing.toHex(hash) + "\t" + entryName;
+        }
+
+        if (!"file".equals(url.getProtocol())) {
+            return null;
+        }
+        final Path file;
+        try {
+            file = Path.of(url.toURI()).toAbsolutePath().normalize();
+        } catch (final URISyntaxException e) {
+            return null;
+        }
+        final byte[] hash = manifest.recordedHash(file);
+        return hash == null ? null : "file\t" + Hashing.toHex(hash) + "\t" + file;
+    }
+
+    // Only the attributes of the launcher jar are used, hashing it would cost more than the plan saves
+    static String fingerprint(final Path repoDir) {
+        if (!ENABLED) {
+            return null;
+        }
+        final ZipIndex bundle = ZipIndex.bundle();
+        if (bundle == null) {
+            return null;
+        }
+
+        final BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(bundle.file(), BasicFileAttributes.class);
+        } catch (final IOException e) {
+            return null;
+        }
+
+        final StringBuilder builder = new StringBuilder()
+            .append(bundle.file().toAbsolutePath()).append('\n')
+            .append(attributes.size()).append('\n')
+            .append(attributes.lastModifiedTime().to(TimeUnit.MILLISECONDS)).append('\n')
+            .append(attributes.fileKey()).append('\n')
+            .append(repoDir.toAbsolutePath().normalize()).append('\n');
+        for (final String property : FINGERPRINT_PROPERTIES) {
+            builder.append(property).append('=').append(System.getProperty(property)).append('\n');
+        }
+        return Hashing.toHex(Hashing.sha256(builder.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -22,14 +22,16 @@ import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.net.URL;
-import java.net.URLClassLoader;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 public final class Lightclip {
     private static final boolean ENABLE_LEAVES_PLUGIN = Boolean.getBoolean("leavesclip.enable.mixin") || Boolean.getBoolean("lightclip.enable.mixin");
@@ -41,73 +43,119 @@ public final class Lightclip {
             System.err.println("Lightclip may not run in a directory containing '!'. Please rename the affected folder.");
             System.exit(1);
         }
+        CdsArchive.relaunch(Path.of(System.getProperty("bundlerRepoDir", "")), args);
 
-        final URL[] setupClasspathUrls = setupClasspath();
+        final LaunchPlan launchPlan;
+        final ClassLoader classLoader;
+        try (final BootGraph boot = new BootGraph()) {
+            final CompletableFuture<LaunchPlan> classpath = boot.stage("classpath", Lightclip::setupClasspath);
+            final CompletableFuture<ClassLoader> launchClassLoader = getClassLoaderForLaunch(boot, classpath);
 
-        final String mainClassName = findMainClass();
-        final ClassLoader classLoader = getClassLoaderForLaunch(setupClasspathUrls);
+            launchPlan = BootGraph.await(classpath);
+            classLoader = BootGraph.await(launchClassLoader);
+        }
 
+        final String mainClassName = launchPlan.mainClass();
         logger.info("Calling main method in server main class: " + mainClassName);
         final Thread runThread = generateThread(args, mainClassName, classLoader);
 
         runThread.start();
     }
 
-    private static @NotNull ClassLoader getClassLoaderForLaunch(URL[] setupClasspathUrls) {
-        if (ENABLE_LEAVES_PLUGIN) {
+    private static @NotNull CompletableFuture<ClassLoader> getClassLoaderForLaunch(
+        final BootGraph boot,
+        final CompletableFuture<LaunchPlan> classpath
+    ) {
+        if (ENABLE_LEAVES_PLUGIN && !isPatchOnly()) {
             logger.info("Leaves plugin has been enabled. Bootstrapping with mixin environment.");
 
-            BuildInfoInjector.inject();
-            overrideAsmVersion();
-            PluginResolver.extractMixins();
-            MixinJarResolver.resolveMixinJars();
+            // Plugin scanning and the mixin bootstrap don't need the server jar, so they run while it is set up
+            final CompletableFuture<Void> buildInfo = boot.run("buildInfo", BuildInfoInjector::inject);
+            final CompletableFuture<Void> plugins = boot.run("plugins", PluginResolver::extractMixins);
+            final CompletableFuture<Void> mixinJars = boot.run("mixinJars", MixinJarResolver::resolveMixinJars, plugins);
+            final CompletableFuture<Void> mixinBootstrap = boot.run("mixinBootstrap", Lightclip::bootstrapMixin);
+
+            final CompletableFuture<MixinURLClassLoader> classLoader = boot.stage(
+                "classLoader",
+                () -> createMixinClassLoader(classpath.join().urls()),
+                classpath, buildInfo, mixinJars, mixinBootstrap
+            );
+            final CompletableFuture<Void> accessWidener = boot.run("accessWidener", () -> {
+                logger.info("Loading accesswideners");
+                AccessWidenerManager.initAccessWidener(classLoader.join());
+            }, classLoader);
+            // The mixin class loader defines classes without their manifest, so it can take the prefetched bytes as they are
+            final CompletableFuture<Void> prefetch = boot.run("prefetch", () -> {
+                final Path repoDir = Path.of(System.getProperty("bundlerRepoDir", ""));
+                classLoader.join().setPrefetcher(ClassPrefetcher.start(repoDir, classLoader.join(), true));
+            }, classLoader);
+
+            return CompletableFuture.allOf(accessWidener, prefetch).thenApply(ignored -> classLoader.join());
+        } else {
+            final CompletableFuture<ServerClassLoader> classLoader = boot.stage(
+                "classLoader",
+                () -> new ServerClassLoader(classpath.join().urls(), Lightclip.class.getClassLoader().getParent()),
+                classpath
+            );
+            final CompletableFuture<Void> prefetch = boot.run("prefetch", () -> {
+                final Path repoDir = Path.of(System.getProperty("bundlerRepoDir", ""));
+                classLoader.join().setPrefetcher(ClassPrefetcher.start(repoDir, classLoader.join(), false));
+            }, classLoader);
+
+            return prefetch.thenApply(ignored -> classLoader.join());
+        }
+    }
 
-            System.setProperty("mixin.bootstrapService", MixinServiceKnotBootstrap.class.getName());
-            System.setProperty("mixin.service", MixinServiceKnot.class.getName());
+    static void bootstrapMixin() {
+        overrideAsmVersion();
 
-            final URL[] classpathUrls = Arrays.copyOf(setupClasspathUrls, setupClasspathUrls.length + MixinJarResolver.jarUrls.length);
-            System.arraycopy(MixinJarResolver.jarUrls, 0, classpathUrls, setupClasspathUrls.length, MixinJarResolver.jarUrls.length);
+        System.setProperty("mixin.bootstrapService", MixinServiceKnotBootstrap.class.getName());
+        System.setProperty("mixin.service", MixinServiceKnot.class.getName());
 
-            final ClassLoader parentClassLoader = Lightclip.class.getClassLoader();
-            MixinServiceKnot.classLoader = Lightclip.class.getClassLoader();
+        MixinServiceKnot.classLoader = Lightclip.class.getClassLoader();
 
-            MixinBootstrap.init();
-            MixinEnvironment.getDefaultEnvironment().setSide(MixinEnvironment.Side.SERVER);
+        MixinBootstrap.init();
+        MixinEnvironment.getDefaultEnvironment().setSide(MixinEnvironment.Side.SERVER);
+    }
 
-            var createdClassLoader = new MixinURLClassLoader(classpathUrls, parentClassLoader);
+    static @NotNull MixinURLClassLoader createMixinClassLoader(final URL[] setupClasspathUrls) {
+        final URL[] classpathUrls = Arrays.copyOf(setupClasspathUrls, setupClasspathUrls.length + MixinJarResolver.jarUrls.length);
+        System.arraycopy(MixinJarResolver.jarUrls, 0, classpathUrls, setupClasspathUrls.length, MixinJarResolver.jarUrls.length);
 
-            ConditionChecker.setClassLoader(createdClassLoader);
-            Mixins.addConfiguration("mixin-extras.init.mixins.json");
-            MixinServiceKnot.classLoader = createdClassLoader;
-            MixinJarResolver.mixinConfigs.forEach(Mixins::addConfiguration);
-            Mixins.getConfigs().forEach(config -> {
-                final String mixinConfigName = config.getName();
-                final String pluginId = MixinJarResolver.getPluginId(mixinConfigName);
-                if (pluginId == null) return;
+        final ClassLoader parentClassLoader = Lightclip.class.getClassLoader();
+        var createdClassLoader = new MixinURLClassLoader(classpathUrls, parentClassLoader);
 
+        ConditionChecker.setClassLoader(createdClassLoader);
+        Mixins.addConfiguration("mixin-extras.init.mixins.json");
+        MixinServiceKnot.classLoader = createdClassLoader;
+        MixinJarResolver.mixinConfigs.forEach(Mixins::addConfiguration);
+        Mixins.getConfigs().forEach(config -> {
+            final String mixinConfigName = config.getName();
+            final String pluginId = MixinJarResolver.getPluginId(mixinConfigName);
+            if (pluginId == null) return;
 
-                final IMixinConfig mixinConfig = config.getConfig();
 
-                mixinConfig.decorate(FabricUtil.KEY_MOD_ID, pluginId);
-                mixinConfig.decorate(FabricUtil.KEY_COMPATIBILITY, FabricUtil.COMPATIBILITY_LATEST);
-            });
+            final IMixinConfig mixinConfig = config.getConfig();
 
-            logger.info("Loading accesswideners");
-            AccessWidenerManager.initAccessWidener(createdClassLoader);
+            mixinConfig.decorate(FabricUtil.KEY_MOD_ID, pluginId);
+            mixinConfig.decorate(FabricUtil.KEY_COMPATIBILITY, FabricUtil.COMPATIBILITY_LATEST);
+        });
+        createdClassLoader.setTargetIndex(new MixinTargetIndex(Mixins.getConfigs()));
 
-            return createdClassLoader;
-        } else {
-            return new URLClassLoader(setupClasspathUrls, Lightclip.class.getClassLoader().getParent());
-        }
+        return createdClassLoader;
     }
 
     private static @NotNull Thread generateThread(Object args, String mainClassName, ClassLoader classLoader) {
         final Thread runThread = new Thread(() -> {
             try {
-                final Class<?> mainClass = Class.forName(mainClassName, true, classLoader);
-                final MethodHandle mainHandle = MethodHandles.lookup()
-                    .findStatic(mainClass, "main", MethodType.methodType(void.class, String[].class))
-                    .asFixedArity();
+                final MethodHandle mainHandle;
+                try (final BootReport.Phase ignored = BootReport.phase("handoff", mainClassName)) {
+                    final Class<?> mainClass = Class.forName(mainClassName, true, classLoader);
+                    mainHandle = MethodHandles.lookup()
+                        .findStatic(mainClass, "main", MethodType.methodType(void.class, String[].class))
+                        .asFixedArity();
+                }
+                BootReport.write(Path.of(System.getProperty("bundlerRepoDir", "")));
                 mainHandle.invoke(args);
             } catch (final Throwable t) {
                 throw Util.sneakyThrow(t);
@@ -117,45 +165,35 @@ public final class Lightclip {
         return runThread;
     }
 
-    private static URL @NotNull [] setupClasspath() {
+    private static @NotNull LaunchPlan setupClasspath() {
         final var repoDir = Path.of(System.getProperty("bundlerRepoDir", ""));
 
+        final VerificationManifest manifest = VerificationManifest.load(repoDir);
+
+        // A warm boot with an unchanged launcher can reuse the class path of the last boot as-is
+        final LaunchPlan cachedPlan = LaunchPlan.load(repoDir, manifest);
+        if (cachedPlan != null) {
+            manifest.save();
+            exitIfPatchOnly(repoDir);
+            return cachedPlan;
+        }
+
         final PatchEntry[] patches = findPatches();
-        DownloadContext downloadContext = findDownloadContext(false);
+        final DownloadContext downloadContext = findDownloadContext(repoDir, manifest);
         if (patches.length > 0 && downloadContext == null) {
             throw new IllegalArgumentException("patches.list file found without a corresponding original-url file");
         }
 
-        final Path baseFile;
-        if (downloadContext != null) {
-            try {
-                downloadContext.download(repoDir);
-            } catch (final IOException e) {
-                System.out.println("Failed to download jar with auto matched download context! Trying using default download context");
-                downloadContext = findDownloadContext(true);
-
-                if (downloadContext == null) {
-                    throw new IllegalStateException("Default download context not found!");
-                }
-
-                try {
-                    downloadContext.download(repoDir);
-                } catch (IOException ex2) {
-                    throw Util.fail("Failed to download original jar", ex2);
-                }
-            }
-            baseFile = downloadContext.getOutputFile(repoDir);
-        } else {
-            baseFile = null;
-        }
-
-        final Map<String, Map<String, URL>> classpathUrls = extractAndApplyPatches(baseFile, patches, repoDir);
-
-        // Exit if user has set `paperclip.patchonly` or `lightclip.patchonly` system property to `true`
-        if (Boolean.getBoolean("paperclip.patchonly")
-                || Boolean.getBoolean("lightclip.patchonly")) {
-            System.exit(0);
+        // Everything that comes from our own jar is extracted while the original jar is still downloading
+        final Map<String, Map<String, URL>> classpathUrls;
+        try (final OriginalJar originalJar = downloadContext == null
+            ? OriginalJar.none()
+            : OriginalJar.download(() -> downloadOriginalJar(downloadContext, repoDir, manifest))) {
+            classpathUrls = extractAndApplyPatches(originalJar, patches, repoDir, manifest);
+        } catch (final IOException e) {
+            throw Util.fail("Failed to read original jar", e);
         }
+        manifest.save();
 
         // Keep versions and libraries separate as the versions must come first
         // This is due to change we make to some library classes inside the versions jar
@@ -166,7 +204,44 @@ public final class Lightclip {
         final URL[] urls = new URL[versionUrls.size() + libraryUrls.size()];
         System.arraycopy(versionUrls.toArray(emptyArray), 0, urls, 0, versionUrls.size());
         System.arraycopy(libraryUrls.toArray(emptyArray), 0, urls, versionUrls.size(), libraryUrls.size());
-        return urls;
+
+        final LaunchPlan launchPlan = new LaunchPlan(findMainClass(), urls);
+        launchPlan.save(repoDir, manifest);
+        exitIfPatchOnly(repoDir);
+        return launchPlan;
+    }
+
+    private static Path downloadOriginalJar(DownloadContext downloadContext, final Path repoDir, final VerificationManifest manifest) {
+        try {
+            downloadContext.download(repoDir, manifest);
+        } catch (final IOException e) {
+            System.out.println("Failed to download jar with auto matched download context! Trying using default download context");
+            downloadContext = findDownloadContext(repoDir, true);
+
+            if (downloadContext == null) {
+                throw new IllegalStateException("Default download context not found!");
+            }
+
+            try {
+                downloadContext.download(repoDir, manifest);
+            } catch (IOException ex2) {
+                throw Util.fail("Failed to download original jar", ex2);
+            }
+        }
+        return downloadContext.getOutputFile(repoDir);
+    }
+
+    // Exit if user has set `paperclip.patchonly` or `lightclip.patchonly` system property to `true`
+    private static void exitIfPatchOnly(final Path repoDir) {
+        if (isPatchOnly()) {
+            BootReport.write(repoDir);
+            System.exit(0);
+        }
+    }
+
+    static boolean isPatchOnly() {
+        return Boolean.getBoolean("paperclip.patchonly")
+                || Boolean.getBoolean("lightclip.patchonly");
     }
 
     private static @NotNull PatchEntry[] findPatches() {
@@ -175,7 +250,7 @@ public final class Lightclip {
             return new PatchEntry[0];
         }
 
-        try (patchListStream) {
+        try (patchListStream; final BootReport.Phase ignored = BootReport.phase("parseList", "patches.list")) {
             return PatchEntry.parse(new BufferedReader(new InputStreamReader(patchListStream)));
         } catch (final IOException e) {
             throw Util.fail("Failed to read patches.list file", e);
@@ -194,8 +269,7 @@ public final class Lightclip {
         }
     }
 
-    private static @NotNull String getDownloadContextFileName(boolean ignoreCountry) {
-        final String country = Util.getCountryByIp();
+    private static @NotNull String getDownloadContextFileName(final Path repoDir, boolean ignoreCountry) {
         String base = "download-context";
         final String customized = System.getProperty("lightclip.downloadContext");
 
@@ -207,27 +281,36 @@ public final class Lightclip {
             return customized;
         }
 
-        if (country.equals("China")) {
+        if (Util.getCountryByIp(repoDir).equals("China")) {
             return base + "-cn";
         }
 
         return base;
     }
 
-    private static DownloadContext findDownloadContext(boolean ignoreCountry) {
+    // Every download context points at the same original jar, so the region is only looked up when it has to be downloaded
+    private static DownloadContext findDownloadContext(final Path repoDir, final VerificationManifest manifest) {
+        final DownloadContext defaultContext = findDownloadContext(repoDir, true);
+        if (defaultContext != null && defaultContext.isDownloaded(repoDir, manifest)) {
+            return defaultContext;
+        }
+        return findDownloadContext(repoDir, false);
+    }
+
+    private static DownloadContext findDownloadContext(final Path repoDir, boolean ignoreCountry) {
         String line;
         try {
-            line = Util.readResourceText("/META-INF/" + getDownloadContextFileName(ignoreCountry));
+            line = Util.readResourceText("/META-INF/" + getDownloadContextFileName(repoDir, ignoreCountry));
         } catch (final IOException e) {
             // other download source does not found
             try {
-                line = Util.readResourceText("/META-INF/" + getDownloadContextFileName(true));
+                line = Util.readResourceText("/META-INF/" + getDownloadContextFileName(repoDir, true));
             }catch (IOException e1) {
                 throw Util.fail("Failed to read download-context file", e1);
             }
         }
 
-        return DownloadContext.parseLine(line);
+        return DownloadContext.parse(line);
     }
 
     private static FileEntry[] findVersionEntries() {
@@ -242,7 +325,7 @@ public final class Lightclip {
             return null;
         }
 
-        try (libListStream) {
+        try (libListStream; final BootReport.Phase ignored = BootReport.phase("parseList", fileName)) {
             return FileEntry.parse(new BufferedReader(new InputStreamReader(libListStream)));
         } catch (final IOException e) {
             throw Util.fail("Failed to read " + fileName + " file", e);
@@ -262,53 +345,51 @@ public final class Lightclip {
         }
     }
 
-    private static @NotNull Map<String, Map<String, URL>> extractAndApplyPatches(final Path originalJar, final PatchEntry[] patches, final Path repoDir) {
-        if (originalJar == null && patches.length > 0) {
+    private static @NotNull Map<String, Map<String, URL>> extractAndApplyPatches(
+        final OriginalJar originalJar,
+        final PatchEntry[] patches,
+        final Path repoDir,
+        final VerificationManifest manifest
+    ) {
+        if (!originalJar.isPresent() && patches.length > 0) {
             throw new IllegalArgumentException("Patch data found without patch target");
         }
 
         // First extract any non-patch files
-        final Map<String, Map<String, URL>> urls = extractFiles(patches, originalJar, repoDir);
+        final Map<String, Map<String, URL>> urls = extractFiles(patches, originalJar, repoDir, manifest);
 
         // Next apply any patches that we have
-        applyPatches(urls, patches, originalJar, repoDir);
+        applyPatches(urls, patches, originalJar, repoDir, manifest);
 
         return urls;
     }
 
-    private static @NotNull Map<String, Map<String, URL>> extractFiles(final PatchEntry[] patches, final Path originalJar, final Path repoDir) {
+    private static @NotNull Map<String, Map<String, URL>> extractFiles(
+        final PatchEntry[] patches,
+        final OriginalJar originalJar,
+        final Path repoDir,
+        final VerificationManifest manifest
+    ) {
         final var urls = new HashMap<String, Map<String, URL>>();
 
         try {
-            final FileSystem originalJarFs;
-            if (originalJar == null) {
-                originalJarFs = null;
-            } else {
-                originalJarFs = FileSystems.newFileSystem(originalJar);
-            }
-
-            try {
-                final Path originalRootDir;
-                if (originalJarFs == null) {
-                    originalRootDir = null;
-                } else {
-                    originalRootDir = originalJarFs.getPath("/");
-                }
-
-                final var versionsMap = new HashMap<String, URL>();
-                urls.putIfAbsent("versions", versionsMap);
-                final FileEntry[] versionEntries = findVersionEntries();
-                extractEntries(versionsMap, patches, originalRootDir, repoDir, versionEntries, "versions");
-
-                final FileEntry[] libraryEntries = findLibraryEntries();
-                final var librariesMap = new HashMap<String, URL>();
-                urls.putIfAbsent("libraries", librariesMap);
-                extractEntries(librariesMap, patches, originalRootDir, repoDir, libraryEntries, "libraries");
-            } finally {
-                if (originalJarFs != null) {
-                    originalJarFs.close();
-                }
-            }
+            // Both lists are extracted in a single batch so the libraries are not held up by the versions jar
+            final List<Callable<URL>> tasks = new ArrayList<>();
+            final FileEntry[] versionEntries = findVersionEntries();
+            extractEntries(tasks, patches, originalJar, repoDir, manifest, versionEntries, "versions");
+            final FileEntry[] libraryEntries = findLibraryEntries();
+            extractEntries(tasks, patches, originalJar, repoDir, manifest, libraryEntries, "libraries");
+
+            final List<URL> results = Workers.invokeAll("Extractor", tasks);
+
+            // Maps keep insertion order so the classpath order is the same as the list files
+            final var versionsMap = new LinkedHashMap<String, URL>();
+            urls.putIfAbsent("versions", versionsMap);
+            int index = collectUrls(versionsMap, versionEntries, results, 0);
+
+            final var librariesMap = new LinkedHashMap<String, URL>();
+            urls.putIfAbsent("libraries", librariesMap);
+            collectUrls(librariesMap, libraryEntries, results, index);
         } catch (final IOException e) {
             throw Util.fail("Failed to extract jar files", e);
         }
@@ -317,13 +398,14 @@ public final class Lightclip {
     }
 
     private static void extractEntries(
-        final Map<String, URL> urls,
+        final List<Callable<URL>> tasks,
         final PatchEntry[] patches,
-        final Path originalRootDir,
+        final OriginalJar originalJar,
         final Path repoDir,
+        final VerificationManifest manifest,
         final FileEntry[] entries,
         final String targetName
-    ) throws IOException {
+    ) {
         if (entries == null) {
             return;
         }
@@ -332,28 +414,57 @@ public final class Lightclip {
         final Path targetDir = repoDir.resolve(targetName);
 
         for (final FileEntry entry : entries) {
-            entry.extractFile(urls, patches, targetName, originalRootDir, targetPath, targetDir);
+            tasks.add(() -> {
+                try (final BootReport.Phase ignored = BootReport.phase("extract", entry.path())) {
+                    return entry.extractFile(patches, targetName, originalJar, targetPath, targetDir, manifest);
+                }
+            });
+        }
+    }
+
+    private static int collectUrls(final Map<String, URL> urls, final FileEntry[] entries, final List<URL> results, int index) {
+        if (entries == null) {
+            return index;
+        }
+
+        for (final FileEntry entry : entries) {
+            final URL url = results.get(index++);
+            if (url != null) {
+                urls.put(entry.path(), url);
+            }
         }
+        return index;
     }
 
     private static void applyPatches(
         final Map<String, Map<String, URL>> urls,
         final PatchEntry @NotNull [] patches,
-        final Path originalJar,
-        final Path repoDir
+        final OriginalJar originalJar,
+        final Path repoDir,
+        final VerificationManifest manifest
     ) {
         if (patches.length == 0) {
             return;
         }
-        if (originalJar == null) {
+        if (!originalJar.isPresent()) {
             throw new IllegalStateException("Patches provided without patch target");
         }
 
-        try (final FileSystem originalFs = FileSystems.newFileSystem(originalJar)) {
-            final Path originalRootDir = originalFs.getPath("/");
-
+        // All patches read from the same zip file system, which is safe to share between readers
+        try {
+            final List<Callable<URL>> tasks = new ArrayList<>(patches.length);
             for (final PatchEntry patch : patches) {
-                patch.applyPatch(urls, originalRootDir, repoDir);
+                tasks.add(() -> {
+                    try (final BootReport.Phase ignored = BootReport.phase("patch", patch.outputPath())) {
+                        return patch.applyPatch(originalJar, repoDir, manifest);
+                    }
+                });
+            }
+
+            final List<URL> results = Workers.invokeAll("Patcher", tasks);
+            for (int i = 0; i < patches.length; i++) {
+                // For the classpath, use the patched file instead of the original
+                urls.get(patches[i].location()).put(patches[i].originalPath(), results.get(i));
             }
         } catch (final IOException e) {
             throw Util.fail("Failed to apply patches", e);
@@ -0,0 +1,175 @@
+package dev.menthamc.lightclip;
+
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+// Applies a jbsdiff (BSDIFF40) patch without holding any of the files on the heap.
+// The original is memory-mapped, the control, diff and extra blocks of the patch are each decompressed
+// from their own stream, and the output is written through a fixed size buffer.
+final class MappedPatch {
+
+    private static final String MAGIC = "BSDIFF40";
+    private static final int HEADER_SIZE = 32;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private MappedPatch() {}
+
+    @FunctionalInterface
+    interface PatchSource {
+        InputStream open() throws IOException;
+    }
+
+    // Returns the SHA-256 of the written output
+    static byte[] patch(final Path originalFile, final PatchSource patch, final Path outputFile) throws IOException, CompressorException {
+        try (final FileChannel originalChannel = FileChannel.open(originalFile, READ)) {
+            final long originalSize = originalChannel.size();
+            if (originalSize > Integer.MAX_VALUE) {
+                throw new IOException("Original file is too large to be mapped: " + originalFile);
+            }
+            final MappedByteBuffer original = originalChannel.map(FileChannel.MapMode.READ_ONLY, 0, originalSize);
+
+            final long controlLength;
+            final long diffLength;
+            final long outputLength;
+            try (final InputStream headerIn = patch.open()) {
+                final byte[] magic = headerIn.readNBytes(MAGIC.length());
+                if (!MAGIC.equals(new String(magic, StandardCharsets.US_ASCII))) {
+                    throw new IOException("Invalid patch header");
+                }
+                controlLength = readOffset(headerIn);
+                diffLength = readOffset(headerIn);
+                outputLength = readOffset(headerIn);
+                if (controlLength < 0 || diffLength < 0 || outputLength < 0) {
+                    throw new IOException("Invalid patch header");
+                }
+            }
+
+            try (
+                final InputStream controlIn = openBlock(patch, HEADER_SIZE);
+                final InputStream diffIn = openBlock(patch, HEADER_SIZE + controlLength);
+                final InputStream extraIn = openBlock(patch, HEADER_SIZE + controlLength + diffLength);
+                final FileChannel output = FileChannel.open(outputFile, CREATE, WRITE, TRUNCATE_EXISTING)
+            ) {
+                final MessageDigest digest = Hashing.newSha256();
+                apply(original, controlIn, diffIn, extraIn, outputLength, output, digest);
+                return digest.digest();
+            }
+        }
+    }
+
+    private static void apply(
+        final MappedByteBuffer original,
+        final InputStream controlIn,
+        final InputStream diffIn,
+        final InputStream extraIn,
+        final long outputLength,
+        final FileChannel output,
+        final MessageDigest digest
+    ) throws IOException {
+        final int originalSize = original.capacity();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        final byte[] originalBuffer = new byte[BUFFER_SIZE];
+
+        long outputPos = 0;
+        long originalPos = 0;
+        while (outputPos < outputLength) {
+            final long diffLength = readOffset(controlIn);
+            final long extraLength = readOffset(controlIn);
+            final long seekLength = readOffset(controlIn);
+            if (diffLength < 0 || extraLength < 0 || outputPos + diffLength + extraLength > outputLength) {
+                throw new IOException("Corrupt patch control block");
+            }
+
+            // The diff block holds the difference to the original at the current position
+            long remaining = diffLength;
+            while (remaining > 0) {
+                final int length = (int) Math.min(BUFFER_SIZE, remaining);
+                readFully(diffIn, buffer, length);
+
+                if (originalPos >= 0 && originalPos + length <= originalSize) {
+                    original.get((int) originalPos, originalBuffer, 0, length);
+                    for (int i = 0; i < length; i++) {
+                        buffer[i] += originalBuffer[i];
+                    }
+                } else {
+                    for (int i = 0; i < length; i++) {
+                        final long pos = originalPos + i;
+                        if (pos >= 0 && pos < originalSize) {
+                            buffer[i] += original.get((int) pos);
+                        }
+                    }
+                }
+
+                write(output, digest, buffer, length);
+                originalPos += length;
+                remaining -= length;
+            }
+            outputPos += diffLength;
+
+            // The extra block is copied to the output as-is
+            remaining = extraLength;
+            while (remaining > 0) {
+                final int length = (int) Math.min(BUFFER_SIZE, remaining);
+                readFully(extraIn, buffer, length);
+                write(output, digest, buffer, length);
+                remaining -= length;
+            }
+            outputPos += extraLength;
+            originalPos += seekLength;
+        }
+    }
+
+    private static InputStream openBlock(final PatchSource patch, final long offset) throws IOException, CompressorException {
+        final InputStream in = patch.open();
+        try {
+            in.skipNBytes(offset);
+            return new CompressorStreamFactory().createCompressorInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+        } catch (final IOException | CompressorException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    // bsdiff stores offsets as 8 byte little endian sign-magnitude numbers
+    private static long readOffset(final InputStream in) throws IOException {
+        final byte[] buf = in.readNBytes(8);
+        if (buf.length < 8) {
+            throw new IOException("Unexpected end of patch");
+        }
+
+        long value = buf[7] & 0x7F;
+        for (int i = 6; i >= 0; i--) {
+            value = (value << 8) | (buf[i] & 0xFF);
+        }
+        return (buf[7] & 0x80) != 0 ? -value : value;
+    }
+
+    private static void readFully(final InputStream in, final byte[] buffer, final int length) throws IOException {
+        if (in.readNBytes(buffer, 0, length) != length) {
+            throw new IOException("Unexpected end of patch");
+        }
+    }
+
+    private static void write(final FileChannel output, final MessageDigest digest, final byte[] buffer, final int length) throws IOException {
+        digest.update(buffer, 0, length);
+        final ByteBuffer data = ByteBuffer.wrap(buffer, 0, length);
+        while (data.hasRemaining()) {
+            output.write(data);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package dev.menthamc.lightclip;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLDecoder;
+import java.net.URLStreamHandler;
+import java.net.spi.URLStreamHandlerProvider;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Serves jars stored inside our own jar, e.g. `lightclip-nested:/META-INF/libraries/foo.jar!/foo/Bar.class`.
+// The URLs of the jars themselves end with `!/`, so URLClassLoader resolves resources against them like a directory
+// and every lookup ends up here instead of in a JarFile. That leaves classes of nested jars without a manifest, see
+// `lightclip.nestedLibraries` in FileEntry.
+public final class NestedJarHandler extends URLStreamHandler {
+
+    public static final String PROTOCOL = "lightclip-nested";
+    private static final String SEPARATOR = "!/";
+
+    static final NestedJarHandler INSTANCE = new NestedJarHandler();
+
+    private final Map<String, Optional<ZipIndex>> jars = new ConcurrentHashMap<>();
+
+    static URL urlOf(final String entryName) {
+        try {
+            return URL.of(URI.create(PROTOCOL + ":/" + entryName + SEPARATOR), INSTANCE);
+        } catch (final MalformedURLException e) {
+            throw Util.fail("Invalid nested jar name " + entryName, e);
+        }
+    }
+
+    // The name of the nested jar in our jar, for the URL of a nested jar itself
+    static String entryNameOf(final URL url) {
+        final String path = url.getPath();
+        return path.substring(1, path.length() - SEPARATOR.length());
+    }
+
+    @Override
+    protected URLConnection openConnection(final URL url) throws IOException {
+        final String path = url.getPath();
+        final int separator = path.indexOf(SEPARATOR);
+        if (!path.startsWith("/") || separator < 0) {
+            throw new MalformedURLException("Not a nested jar URL: " + url);
+        }
+
+        final String entryName = path.substring(separator + SEPARATOR.length());
+        return new Connection(url, this.jar(path.substring(1, separator)), entryName.indexOf('%') >= 0
+            ? URLDecoder.decode(entryName.replace("+", "%2B"), StandardCharsets.UTF_8)
+            : entryName);
+    }
+
+    private ZipIndex jar(final String name) throws IOException {
+        try {
+            return this.jars.computeIfAbsent(name, NestedJarHandler::openJar).orElse(null);
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static Optional<ZipIndex> openJar(final String name) {
+        final ZipIndex bundle = ZipIndex.bundle();
+        final ZipIndex.Entry entry = bundle == null ? null : bundle.get(name);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.ofNullable(bundle.openNested(entry));
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class Connection extends URLConnection {
+        private final ZipIndex jar;
+        private final String entryName;
+        private ZipIndex.Entry entry;
+
+        Connection(final URL url, final ZipIndex jar, final String entryName) {
+            super(url);
+            this.jar = jar;
+            this.entryName = entryName;
+        }
+
+        @Override
+        public void connect() throws IOException {
+            if (this.connected) {
+                return;
+            }
+            this.entry = this.jar == null ? null : this.jar.get(this.entryName);
+            if (this.entry == null) {
+                throw new MissingEntryException(this.url);
+            }
+            this.connected = true;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            this.connect();
+            return this.jar.openStream(this.entry);
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            try {
+                this.connect();
+            } catch (final IOException e) {
+                return -1;
+            }
+            return this.entry.size();
+        }
+    }
+
+    // URLClassLoader asks every jar on the class path for a class until one has it, so misses are common and
+    // shouldn't pay for a stack trace
+    private static final class MissingEntryException extends FileNotFoundException {
+        MissingEntryException(final URL url) {
+            super(url.toString());
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    // Lets `new URL("lightclip-nested:...")` work for code that round-trips resource URLs through strings
+    public static final class Provider extends URLStreamHandlerProvider {
+        @Override
+        public URLStreamHandler createURLStreamHandler(final String protocol) {
+            return PROTOCOL.equals(protocol) ? INSTANCE : null;
+        }
+    }
+}
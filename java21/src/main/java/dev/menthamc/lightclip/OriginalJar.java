@@ -0,0 +1,63 @@
+package dev.menthamc.lightclip;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+// The original jar, downloaded in the background while everything that doesn't need it is extracted.
+// Only the work that reads from it waits for the download, and they all share one zip file system.
+final class OriginalJar implements Closeable {
+
+    private static final OriginalJar NONE = new OriginalJar(null);
+
+    private final Future<Path> download;
+    private FileSystem fileSystem;
+    private Path rootDir;
+
+    private OriginalJar(final Future<Path> download) {
+        this.download = download;
+    }
+
+    static OriginalJar none() {
+        return NONE;
+    }
+
+    static OriginalJar download(final Callable<Path> download) {
+        final FutureTask<Path> task = new FutureTask<>(download);
+        Workers.threadFactory("Downloader").newThread(task).start();
+        return new OriginalJar(task);
+    }
+
+    boolean isPresent() {
+        return this.download != null;
+    }
+
+    // Waits for the download to finish, null if there is no original jar
+    synchronized Path rootDir() throws IOException {
+        if (this.download == null) {
+            return null;
+        }
+        if (this.rootDir == null) {
+            this.fileSystem = FileSystems.newFileSystem(Workers.await(this.download));
+            this.rootDir = this.fileSystem.getPath("/");
+        }
+        return this.rootDir;
+    }
+
+    // The download always finishes before the class path is handed out, even if nothing needed the jar this boot
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.download == null) {
+            return;
+        }
+        Workers.await(this.download);
+        if (this.fileSystem != null) {
+            this.fileSystem.close();
+        }
+    }
+}
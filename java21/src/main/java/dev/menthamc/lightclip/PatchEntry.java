@@ -9,6 +9,8 @@
 
 package dev.menthamc.lightclip;
 
+import dev.menthamc.lightclip.jfr.ApplyPatchEvent;
+import dev.menthamc.lightclip.jfr.Events;
 import org.leavesmc.leavesclip.mixin.MixinURLClassLoader;
 import io.sigpipe.jbsdiff.InvalidHeaderException;
 import io.sigpipe.jbsdiff.Patch;
@@ -18,10 +20,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.Arrays;
-import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.commons.compress.compressors.CompressorException;
 
 import static java.nio.file.StandardOpenOption.CREATE;
@@ -37,7 +43,19 @@ public record PatchEntry(
         String patchPath,
         String outputPath
 ) {
-    private static boolean announced = false;
+    private static final AtomicBoolean announced = new AtomicBoolean();
+
+    // Patches run concurrently, so the heap they may hold at once is capped (in KiB).
+    // The default is half of the max heap, override with `lightclip.patchMemory` (in MiB)
+    private static final int memoryBudget = (int) Math.min(Integer.MAX_VALUE,
+        Long.getLong("lightclip.patchMemory", Runtime.getRuntime().maxMemory() / 2 / 1024 / 1024) * 1024);
+    private static final Semaphore memoryPermits = new Semaphore(memoryBudget);
+
+    // `mapped` patches from a memory-mapped copy of the original and streams the output to disk,
+    // so heap use doesn't grow with the size of the jar. `heap` keeps everything in memory
+    private static final boolean MAPPED_PATCH = "mapped".equalsIgnoreCase(System.getProperty("lightclip.patchMode", "heap"));
+    // Buffers plus the state of three decompressors, independent of the jar size
+    private static final long MAPPED_PATCH_MEMORY = 16 * 1024 * 1024;
 
     public static PatchEntry[] parse(final BufferedReader reader) throws IOException {
         var result = new PatchEntry[8];
@@ -87,52 +105,87 @@ public record PatchEntry(
         );
     }
 
-    public void applyPatch(final Map<String, Map<String, URL>> urls, final Path originalRootDir, final Path repoDir) throws IOException {
-        final Path inputDir = originalRootDir.resolve("META-INF").resolve(this.location);
+    URL applyPatch(final OriginalJar originalJar, final Path repoDir, final VerificationManifest manifest) throws IOException {
         final Path targetDir = repoDir.resolve(this.location);
-
-        final Path inputFile = inputDir.resolve(this.originalPath);
         final Path outputFile = targetDir.resolve(this.outputPath);
+        final ApplyPatchEvent event = Events.applyPatch();
 
         // Short-cut if the patch is already applied
-        if (Files.exists(outputFile) && Util.isFileValid(outputFile, this.outputHash)) {
+        if (manifest.isFileValid(outputFile, this.outputHash)) {
+            this.commit(event, false);
             // For the classpath, use the patched file instead of the original
-            urls.get(this.location).put(this.originalPath, outputFile.toUri().toURL());
-            return;
+            return outputFile.toUri().toURL();
         }
 
-        if (!announced) {
+        // Only now do we need the original jar, this waits for it to be downloaded
+        final Path inputFile = originalJar.rootDir().resolve("META-INF").resolve(this.location).resolve(this.originalPath);
+
+        if (announced.compareAndSet(false, true)) {
             Lightclip.logger.info("Applying patches");
-            announced = true;
         }
 
         // Verify input file is correct
         if (Files.notExists(inputFile)) {
             throw new IllegalStateException("Input file not found: " + inputFile);
         }
-        if (!Util.isFileValid(inputFile, this.originalHash)) {
+
+        // In heap mode the original, the patch and the patched output are all held in memory while patching
+        final long memory = MAPPED_PATCH ? MAPPED_PATCH_MEMORY : Files.size(inputFile) * 3;
+        final int permits = (int) Math.min(memoryBudget, Math.max(1, memory / 1024));
+        try {
+            memoryPermits.acquire(permits);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to patch " + inputFile, e);
+        }
+        try {
+            if (MAPPED_PATCH) {
+                this.patchMapped(inputFile, outputFile);
+            } else {
+                this.patch(inputFile, outputFile);
+            }
+        } finally {
+            memoryPermits.release(permits);
+        }
+        manifest.record(outputFile, this.outputHash);
+        this.commit(event, true);
+
+        // For the classpath, use the patched file instead of the original
+        return outputFile.toUri().toURL();
+    }
+
+    private void commit(final ApplyPatchEvent event, final boolean applied) {
+        if (event != null && event.shouldCommit()) {
+            event.path = this.outputPath;
+            event.applied = applied;
+            event.mapped = applied && MAPPED_PATCH;
+            event.commit();
+        }
+    }
+
+    private void patch(final Path inputFile, final Path outputFile) throws IOException {
+        // The original is needed in memory anyway, so verify the bytes we already read
+        final byte[] originalBytes = Util.readBytes(inputFile);
+        if (!Util.isDataValid(originalBytes, this.originalHash)) {
             throw new IllegalStateException("Hash check of input file failed for " + inputFile);
         }
 
         // Get and verity patch data is correct
-        final String fullPatchPath = "/META-INF/" + Util.endingSlash(this.location) + this.patchPath;
-        final InputStream patchStream = MixinURLClassLoader.class.getResourceAsStream(fullPatchPath);
-        if (patchStream == null) {
-            throw new IllegalStateException("Patch file not found: " + fullPatchPath);
-        }
-        final byte[] patchBytes = Util.readFully(patchStream);
+        final byte[] patchBytes = Util.readFully(this.openPatch());
         if (!Util.isDataValid(patchBytes, this.patchHash)) {
-            throw new IllegalStateException("Hash check of patch file failed for " + fullPatchPath);
+            throw new IllegalStateException("Hash check of patch file failed for " + this.fullPatchPath());
         }
 
-        final byte[] originalBytes = Util.readBytes(inputFile);
+        final Path tempFile = Util.tempFile(outputFile);
+        final MessageDigest outputDigest = Hashing.newSha256();
         try {
             if (!Files.isDirectory(outputFile.getParent())) {
                 Files.createDirectories(outputFile.getParent());
             }
             try (
-                final OutputStream outStream =
-                    new BufferedOutputStream(Files.newOutputStream(outputFile, CREATE, WRITE, TRUNCATE_EXISTING))
+                final OutputStream outStream = new BufferedOutputStream(
+                    new DigestOutputStream(Files.newOutputStream(tempFile, CREATE, WRITE, TRUNCATE_EXISTING), outputDigest)
+                )
             ) {
                 Patch.patch(originalBytes, patchBytes, outStream);
             }
@@ -142,11 +195,71 @@ public record PatchEntry(
             throw Util.fail("Failed to patch " + inputFile, e);
         }
 
-        if (!Util.isFileValid(outputFile, this.outputHash)) {
+        if (!Arrays.equals(this.outputHash, outputDigest.digest())) {
+            Files.deleteIfExists(tempFile);
             throw new IllegalStateException("Patch not applied correctly for " + this.outputPath);
         }
+        BootReport.bytesWritten(Files.size(tempFile));
+        Util.moveAtomically(tempFile, outputFile);
+    }
 
-        // For the classpath, use the patched file instead of the original
-        urls.get(this.location).put(this.originalPath, outputFile.toUri().toURL());
+    private void patchMapped(final Path inputFile, final Path outputFile) throws IOException {
+        if (!Arrays.equals(this.patchHash, Hashing.sha256(this.openPatch()))) {
+            throw new IllegalStateException("Hash check of patch file failed for " + this.fullPatchPath());
+        }
+
+        if (!Files.isDirectory(outputFile.getParent())) {
+            Files.createDirectories(outputFile.getParent());
+        }
+
+        // The original lives inside the original jar, it needs to be on disk to be mapped
+        final Path originalCopy = outputFile.resolveSibling(outputFile.getFileName() + ".original");
+        final Path tempFile = Util.tempFile(outputFile);
+        final byte[] writtenHash;
+        try {
+            final byte[] originalCopyHash;
+            try (final FileChannel copyChannel = FileChannel.open(originalCopy, CREATE, WRITE, TRUNCATE_EXISTING)) {
+                originalCopyHash = Hashing.copy(Files.newInputStream(inputFile), copyChannel);
+            }
+            if (!Arrays.equals(this.originalHash, originalCopyHash)) {
+                throw new IllegalStateException("Hash check of input file failed for " + inputFile);
+            }
+
+            try {
+                writtenHash = MappedPatch.patch(originalCopy, this::openPatch, tempFile);
+            } catch (final IOException | CompressorException e) {
+                throw Util.fail("Failed to patch " + inputFile, e);
+            }
+        } finally {
+            deleteMapped(originalCopy);
+        }
+
+        if (!Arrays.equals(this.outputHash, writtenHash)) {
+            Files.deleteIfExists(tempFile);
+            throw new IllegalStateException("Patch not applied correctly for " + this.outputPath);
+        }
+        BootReport.bytesWritten(Files.size(tempFile));
+        Util.moveAtomically(tempFile, outputFile);
+    }
+
+    private static void deleteMapped(final Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (final IOException e) {
+            // Windows refuses to delete files which are still mapped, the mapping is only released on GC
+            file.toFile().deleteOnExit();
+        }
+    }
+
+    private String fullPatchPath() {
+        return "/META-INF/" + Util.endingSlash(this.location) + this.patchPath;
+    }
+
+    private InputStream openPatch() {
+        final InputStream patchStream = MixinURLClassLoader.class.getResourceAsStream(this.fullPatchPath());
+        if (patchStream == null) {
+            throw new IllegalStateException("Patch file not found: " + this.fullPatchPath());
+        }
+        return patchStream;
     }
 }
@@ -0,0 +1,32 @@
+package dev.menthamc.lightclip;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+// The class loader of the server when no mixins are loaded. Classes are defined by URLClassLoader as before, this only
+// lets the prefetcher see the order they are asked for in.
+final class ServerClassLoader extends URLClassLoader {
+
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    private volatile ClassPrefetcher prefetcher;
+
+    ServerClassLoader(final URL[] urls, final ClassLoader parent) {
+        super(urls, parent);
+    }
+
+    void setPrefetcher(final ClassPrefetcher prefetcher) {
+        this.prefetcher = prefetcher;
+    }
+
+    @Override
+    protected Class<?> findClass(final String name) throws ClassNotFoundException {
+        final ClassPrefetcher prefetcher = this.prefetcher;
+        if (prefetcher != null) {
+            prefetcher.take(name);
+        }
+        return super.findClass(name);
+    }
+}
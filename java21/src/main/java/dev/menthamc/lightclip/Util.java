@@ -2,6 +2,8 @@ package dev.menthamc.lightclip;
 
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import dev.menthamc.lightclip.jfr.HashCheckEvent;
+import dev.menthamc.lightclip.jfr.Events;
 import org.leavesmc.leavesclip.mixin.MixinURLClassLoader;
 
 import java.io.IOException;
@@ -13,25 +15,27 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Util {
 
-    private Util() {}
-
-    public static MessageDigest sha256Digest = getSha256Digest();
+    private static final String COUNTRY_CACHE_FILE = "country";
+    private static final String UNKNOWN_COUNTRY = "Unknown";
+    private static final long COUNTRY_CACHE_TTL_MILLIS = TimeUnit.HOURS.toMillis(Long.getLong("lightclip.countryCacheHours", 24));
+    private static final Duration COUNTRY_LOOKUP_TIMEOUT = Duration.ofSeconds(5);
 
-    private static MessageDigest getSha256Digest() {
-        try {
-            return MessageDigest.getInstance("SHA-256");
-        } catch (final NoSuchAlgorithmException e) {
-            throw fail("Could not create hashing instance", e);
-        }
-    }
+    private Util() {}
 
     public static byte[] readBytes(final Path file) {
         try {
@@ -54,6 +58,7 @@ public class Util {
                     buffer = Arrays.copyOf(buffer, buffer.length * 2);
                 }
             }
+            BootReport.bytesRead(off);
             return Arrays.copyOfRange(buffer, 0, off);
         }
     }
@@ -80,16 +85,39 @@ public class Util {
     }
 
     static boolean isDataValid(final byte[] data, final byte[] hash) {
-        return Arrays.equals(hash, sha256Digest.digest(data));
+        return Arrays.equals(hash, Hashing.sha256(data));
     }
     static boolean isFileValid(final Path file, final byte[] hash) {
         if (Files.exists(file)) {
-            final byte[] fileBytes = readBytes(file);
-            return isDataValid(fileBytes, hash);
+            final HashCheckEvent event = Events.hashCheck();
+            try {
+                final boolean valid = Arrays.equals(hash, Hashing.sha256(file));
+                if (event != null && event.shouldCommit()) {
+                    event.file = file.toString();
+                    event.size = Files.size(file);
+                    event.valid = valid;
+                    event.commit();
+                }
+                return valid;
+            } catch (final IOException e) {
+                throw fail("Failed to read all of the data from " + file.toAbsolutePath(), e);
+            }
         }
         return false;
     }
 
+    static Path tempFile(final Path file) {
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+
+    static void moveAtomically(final Path source, final Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
     static byte[] fromHex(final String s) {
         if (s.length() % 2 != 0) {
             throw new IllegalArgumentException("Length of hex " + s + " must be divisible by two");
@@ -139,32 +167,94 @@ public class Util {
         return dir + "/";
     }
 
-    public static String getCountryByIp() {
-        HttpClient client = HttpClient.newHttpClient();
-        String[] apis = {
-            "http://ipinfo.io/country",
-            "http://ip-api.com/json/?fields=country"
-        };
-        
-        for (String api : apis) {
-            try {
-                HttpRequest request = HttpRequest.newBuilder()
-                        .uri(URI.create(api))
-                        .timeout(java.time.Duration.ofSeconds(5))
-                        .build();
-
-                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-                
-                if (api.contains("ipinfo.io")) {
-                    return response.body().trim();
-                } else if (api.contains("ip-api.com")) {
-                    JsonObject json = JsonParser.parseString(response.body()).getAsJsonObject();
-                    return json.get("country").getAsString();
+    // Cached in the repo dir so the network is only asked again once the TTL runs out
+    public static String getCountryByIp(final Path repoDir) {
+        final Path cacheFile = repoDir.resolve("cache").resolve(COUNTRY_CACHE_FILE);
+        try {
+            if (Files.isRegularFile(cacheFile)
+                && System.currentTimeMillis() - Files.getLastModifiedTime(cacheFile).toMillis() < COUNTRY_CACHE_TTL_MILLIS) {
+                final String cached = Files.readString(cacheFile).trim();
+                if (!cached.isEmpty()) {
+                    return cached;
                 }
-            } catch (Exception e) {
-                continue;
             }
+        } catch (final IOException e) {
+            Lightclip.logger.warn("Ignoring unreadable country cache {}", cacheFile);
+        }
+
+        final String country;
+        try (final BootReport.Phase ignored = BootReport.phase("geoLookup")) {
+            country = lookupCountry();
+        }
+        if (!country.equals(UNKNOWN_COUNTRY)) {
+            try {
+                Files.createDirectories(cacheFile.getParent());
+                final Path tempFile = tempFile(cacheFile);
+                Files.writeString(tempFile, country);
+                moveAtomically(tempFile, cacheFile);
+            } catch (final IOException e) {
+                Lightclip.logger.warn("Failed to write country cache {}", cacheFile);
+            }
+        }
+        return country;
+    }
+
+    // Both APIs are asked at once and the first answer wins, so one unreachable API doesn't hold up the other
+    private static String lookupCountry() {
+        final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(COUNTRY_LOOKUP_TIMEOUT)
+            .build();
+
+        // The raw exchanges are kept, cancelling a dependent stage doesn't reach the request it depends on
+        final CompletableFuture<HttpResponse<String>> ipInfoResponse = sendAsync(client, "http://ipinfo.io/country");
+        final CompletableFuture<HttpResponse<String>> ipApiResponse = sendAsync(client, "http://ip-api.com/json/?fields=country");
+        final CompletableFuture<String> ipInfo = ipInfoResponse
+            .thenApply(response -> body("ipinfo.io", response).trim());
+        final CompletableFuture<String> ipApi = ipApiResponse
+            .thenApply(response -> {
+                final JsonObject json = JsonParser.parseString(body("ip-api.com", response)).getAsJsonObject();
+                return json.get("country").getAsString();
+            });
+
+        final CompletableFuture<String> first = new CompletableFuture<>();
+        final AtomicInteger pending = new AtomicInteger(2);
+        for (final CompletableFuture<String> lookup : List.of(ipInfo, ipApi)) {
+            lookup.whenComplete((country, error) -> {
+                if (error == null && country != null && !country.isEmpty()) {
+                    first.complete(country);
+                } else if (pending.decrementAndGet() == 0) {
+                    first.complete(UNKNOWN_COUNTRY);
+                }
+            });
+        }
+
+        try {
+            return first.get(COUNTRY_LOOKUP_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return UNKNOWN_COUNTRY;
+        } catch (final ExecutionException | TimeoutException e) {
+            return UNKNOWN_COUNTRY;
+        } finally {
+            ipInfoResponse.cancel(true);
+            ipApiResponse.cancel(true);
+            // close() would wait for the losing exchange to finish, shutdownNow() aborts it
+            client.shutdownNow();
+        }
+    }
+
+    private static CompletableFuture<HttpResponse<String>> sendAsync(final HttpClient client, final String api) {
+        final HttpRequest request = HttpRequest.newBuilder()
+            .uri(URI.create(api))
+            .timeout(COUNTRY_LOOKUP_TIMEOUT)
+            .build();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String body(final String api, final HttpResponse<String> response) {
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(api + " responded with " + response.statusCode());
         }
-        return "Unknown";
+        return response.body();
     }
 }
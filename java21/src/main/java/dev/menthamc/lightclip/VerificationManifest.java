@@ -0,0 +1,253 @@
+package dev.menthamc.lightclip;
+
+import dev.menthamc.lightclip.jfr.HashCheckEvent;
+import dev.menthamc.lightclip.jfr.Events;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Remembers which files in the repo dir were already verified so warm boots don't have to rehash them.
+// Files are written to a temporary file and only moved into place once their hash is checked,
+// so a file whose size, modification time and file key still match its record can be trusted.
+final class VerificationManifest {
+
+    private static final String FILE_NAME = "verification.manifest";
+
+    // Modification times are only as precise as the file system, files touched this close to the time they were
+    // verified are rehashed on the next boot
+    private static final long RACY_WINDOW_MILLIS = 2000;
+
+    private static final TrustPolicy POLICY = TrustPolicy.fromProperty(System.getProperty("lightclip.verify", "trust"));
+    private static final double SAMPLE_RATE = Double.parseDouble(System.getProperty("lightclip.verify.sampleRate", "0.1"));
+
+    private final Path repoDir;
+    private final Path file;
+    private final Map<String, Record> records = new ConcurrentHashMap<>();
+    private final Map<String, Record> touched = new ConcurrentHashMap<>();
+    private volatile boolean changed;
+
+    private VerificationManifest(final Path repoDir) {
+        this.repoDir = repoDir.toAbsolutePath().normalize();
+        this.file = this.repoDir.resolve(FILE_NAME);
+    }
+
+    static VerificationManifest load(final Path repoDir) {
+        final VerificationManifest manifest = new VerificationManifest(repoDir);
+        if (POLICY == TrustPolicy.ALWAYS || Files.notExists(manifest.file)) {
+            return manifest;
+        }
+
+        try (final BufferedReader reader = Files.newBufferedReader(manifest.file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] parts = line.split("\t");
+                if (parts.length != 6) {
+                    continue;
+                }
+                manifest.records.put(parts[5], new Record(
+                    Util.fromHex(parts[0]),
+                    Long.parseLong(parts[1]),
+                    Long.parseLong(parts[2]),
+                    Long.parseLong(parts[3]),
+                    parts[4]
+                ));
+            }
+        } catch (final IOException | IllegalArgumentException e) {
+            // A broken manifest only means we rehash everything
+            Lightclip.logger.warn("Ignoring unreadable verification manifest {}", manifest.file);
+            manifest.records.clear();
+        }
+        return manifest;
+    }
+
+    boolean isFileValid(final Path file, final byte[] hash) {
+        if (file.getFileSystem() != FileSystems.getDefault()) {
+            return Util.isFileValid(file, hash);
+        }
+
+        return this.isValid(file, this.keyOf(file), hash, () -> Util.isFileValid(file, hash));
+    }
+
+    // Entries inside a jar are recorded against the size, modification time and file key of the jar itself
+    boolean isEntryValid(final Path jar, final String entryName, final byte[] hash, final HashCheck check) {
+        return this.isValid(jar, this.keyOf(jar) + "!/" + entryName, hash, check);
+    }
+
+    private boolean isValid(final Path file, final String key, final byte[] hash, final HashCheck check) {
+        final BasicFileAttributes attributes = readAttributes(file);
+        if (attributes == null) {
+            this.remove(key);
+            return false;
+        }
+
+        final Record record = this.records.get(key);
+        if (record != null && record.matches(attributes, hash) && POLICY.trust()) {
+            this.touched.put(key, record);
+            final HashCheckEvent event = Events.hashCheck();
+            if (event != null && event.shouldCommit()) {
+                event.file = key;
+                event.size = attributes.size();
+                event.valid = true;
+                event.trusted = true;
+                event.commit();
+            }
+            return true;
+        }
+
+        final boolean valid;
+        try {
+            valid = check.isValid();
+        } catch (final IOException e) {
+            throw Util.fail("Failed to verify " + key, e);
+        }
+        if (!valid) {
+            this.remove(key);
+            return false;
+        }
+        this.record(key, attributes, hash);
+        return true;
+    }
+
+    void record(final Path file, final byte[] hash) {
+        final BasicFileAttributes attributes = readAttributes(file);
+        if (attributes != null) {
+            this.record(this.keyOf(file), attributes, hash);
+        }
+    }
+
+    private void record(final String key, final BasicFileAttributes attributes, final byte[] hash) {
+        final Record record = Record.of(attributes, hash);
+        this.records.put(key, record);
+        this.touched.put(key, record);
+        this.changed = true;
+    }
+
+    private void remove(final String key) {
+        if (this.records.remove(key) != null) {
+            this.changed = true;
+        }
+    }
+
+    // The hash a file was verified against during this boot, null if it wasn't
+    byte[] recordedHash(final Path file) {
+        final Record record = this.touched.get(this.keyOf(file));
+        return record == null ? null : record.hash();
+    }
+
+    byte[] recordedHash(final Path jar, final String entryName) {
+        final Record record = this.touched.get(this.keyOf(jar) + "!/" + entryName);
+        return record == null ? null : record.hash();
+    }
+
+    void save() {
+        if (POLICY == TrustPolicy.ALWAYS) {
+            return;
+        }
+        // Nothing to write when every record was trusted as-is
+        if (!this.changed && this.touched.size() == this.records.size()) {
+            return;
+        }
+
+        // Only keep what was seen this boot, files from older versions drop out on their own
+        final Path tempFile = Util.tempFile(this.file);
+        try {
+            Files.createDirectories(this.repoDir);
+            try (final BufferedWriter writer = Files.newBufferedWriter(tempFile)) {
+                for (final Map.Entry<String, Record> entry : this.touched.entrySet()) {
+                    final Record record = entry.getValue();
+                    writer.write(Hashing.toHex(record.hash()) + "\t" + record.size() + "\t"
+                        + record.modified() + "\t" + record.verifiedAt() + "\t" + record.fileKey() + "\t" + entry.getKey());
+                    writer.newLine();
+                }
+            }
+            Util.moveAtomically(tempFile, this.file);
+        } catch (final IOException e) {
+            Lightclip.logger.warn("Failed to write verification manifest {}", this.file);
+        }
+    }
+
+    private String keyOf(final Path file) {
+        final Path absolute = file.toAbsolutePath().normalize();
+        if (absolute.startsWith(this.repoDir)) {
+            return this.repoDir.relativize(absolute).toString().replace('\\', '/');
+        }
+        return absolute.toString();
+    }
+
+    private static BasicFileAttributes readAttributes(final Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (final NoSuchFileException e) {
+            return null;
+        } catch (final IOException e) {
+            throw Util.fail("Failed to read attributes of " + file.toAbsolutePath(), e);
+        }
+    }
+
+    @FunctionalInterface
+    interface HashCheck {
+        boolean isValid() throws IOException;
+    }
+
+    private record Record(byte[] hash, long size, long modified, long verifiedAt, String fileKey) {
+
+        static Record of(final BasicFileAttributes attributes, final byte[] hash) {
+            return new Record(
+                hash,
+                attributes.size(),
+                attributes.lastModifiedTime().to(TimeUnit.MILLISECONDS),
+                System.currentTimeMillis(),
+                fileKeyOf(attributes)
+            );
+        }
+
+        boolean matches(final BasicFileAttributes attributes, final byte[] hash) {
+            final long modified = attributes.lastModifiedTime().to(TimeUnit.MILLISECONDS);
+            return Arrays.equals(this.hash, hash)
+                && this.size == attributes.size()
+                && this.modified == modified
+                && this.verifiedAt - modified > RACY_WINDOW_MILLIS
+                && this.fileKey.equals(fileKeyOf(attributes));
+        }
+
+        private static String fileKeyOf(final BasicFileAttributes attributes) {
+            // Not every file system has a file key (e.g. on Windows), the other fields still have to match
+            return Objects.toString(attributes.fileKey(), "-").replace('\t', ' ');
+        }
+    }
+
+    private enum TrustPolicy {
+        ALWAYS,
+        TRUST,
+        SAMPLE;
+
+        boolean trust() {
+            return switch (this) {
+                case ALWAYS -> false;
+                case TRUST -> true;
+                case SAMPLE -> ThreadLocalRandom.current().nextDouble() >= SAMPLE_RATE;
+            };
+        }
+
+        static TrustPolicy fromProperty(final String value) {
+            try {
+                return valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (final IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown lightclip.verify policy: " + value + ", expected always, trust or sample");
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package dev.menthamc.lightclip;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class Workers {
+
+    // Set `lightclip.parallelism` to 1 to run everything on the calling thread
+    static final int PARALLELISM = Math.max(1, Integer.getInteger("lightclip.parallelism", Runtime.getRuntime().availableProcessors()));
+
+    private Workers() {}
+
+    static <T> List<T> invokeAll(final String name, final List<Callable<T>> tasks) throws IOException {
+        return invokeAll(name, PARALLELISM, tasks);
+    }
+
+    static <T> List<T> invokeAll(final String name, final int parallelism, final List<Callable<T>> tasks) throws IOException {
+        final int threads = Math.min(parallelism, tasks.size());
+        final List<T> results = new ArrayList<>(tasks.size());
+
+        if (threads <= 1) {
+            for (final Callable<T> task : tasks) {
+                results.add(call(task));
+            }
+            return results;
+        }
+
+        final ExecutorService pool = Executors.newFixedThreadPool(threads, threadFactory(name));
+        try {
+            final List<Future<T>> futures = new ArrayList<>(tasks.size());
+            for (final Callable<T> task : tasks) {
+                futures.add(pool.submit(task));
+            }
+
+            // Collect in submission order so callers get results matching their input
+            for (final Future<T> future : futures) {
+                results.add(await(future));
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    static ThreadFactory threadFactory(final String name) {
+        final AtomicInteger counter = new AtomicInteger();
+        return task -> {
+            final Thread thread = new Thread(task, "Lightclip " + name + " #" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static <T> T call(final Callable<T> task) throws IOException {
+        try {
+            return task.call();
+        } catch (final IOException | RuntimeException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    static <T> T await(final Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for worker", e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            throw Util.sneakyThrow(cause);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package dev.menthamc.lightclip;
+
+import org.leavesmc.leavesclip.mixin.UrlUtil;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+// Reads the central directory of a zip file, or of a stored zip inside one, so entries can be read straight from
+// their offsets in the file. Only what our own jars need is supported, zip64 archives are rejected and callers
+// fall back to the class loader.
+final class ZipIndex {
+
+    static final int STORED = 0;
+    static final int DEFLATED = 8;
+
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int CENTRAL_DIRECTORY_HEADER = 0x02014b50;
+    private static final int LOCAL_FILE_HEADER = 0x04034b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int LOCAL_FILE_HEADER_SIZE = 30;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final long base;
+    private final long length;
+    private final Map<String, Entry> entries;
+    private volatile ByteBuffer mapping;
+
+    private ZipIndex(final Path file, final FileChannel channel, final long base, final long length, final Map<String, Entry> entries) {
+        this.file = file;
+        this.channel = channel;
+        this.base = base;
+        this.length = length;
+        this.entries = entries;
+    }
+
+    Path file() {
+        return this.file;
+    }
+
+    Entry get(final String name) {
+        return this.entries.get(name);
+    }
+
+    // Indexes a stored jar inside this one, so its entries can be read without extracting it
+    ZipIndex openNested(final Entry entry) throws IOException {
+        if (entry.method() != STORED) {
+            return null;
+        }
+        return open(this.file, this.channel, this.dataOffset(entry), entry.size());
+    }
+
+    InputStream openStream(final Entry entry) throws IOException {
+        final InputStream raw = new ByteBufferInputStream(this.data(entry));
+        return switch (entry.method()) {
+            case STORED -> raw;
+            case DEFLATED -> new EntryInflaterInputStream(raw);
+            default -> throw new ZipException("Unsupported compression method " + entry.method() + " for " + entry.name());
+        };
+    }
+
+    byte[] sha256(final Entry entry) throws IOException {
+        if (entry.method() != STORED) {
+            throw new IllegalArgumentException(entry.name() + " is not stored");
+        }
+        final MessageDigest digest = Hashing.newSha256();
+        digest.update(this.data(entry));
+        return digest.digest();
+    }
+
+    // Copies a stored entry with FileChannel#transferTo, which lets the kernel copy the data without it
+    // passing through the JVM, and returns the SHA-256 of the entry
+    byte[] transferStored(final Entry entry, final FileChannel target) throws IOException {
+        if (entry.method() != STORED) {
+            throw new IllegalArgumentException(entry.name() + " is not stored");
+        }
+
+        final long offset = this.dataOffset(entry);
+        long transferred = 0;
+        while (transferred < entry.size()) {
+            final long count = this.channel.transferTo(offset + transferred, entry.size() - transferred, target);
+            // transferTo returns 0 past the end of the file, a header claiming more data than there is would spin forever
+            if (count <= 0) {
+                throw new IOException("Unexpected end of " + this.file + " while copying " + entry.name());
+            }
+            transferred += count;
+        }
+        BootReport.bytesRead(transferred);
+        BootReport.bytesWritten(transferred);
+
+        return this.sha256(entry);
+    }
+
+    // The raw data of an entry, deflated entries are returned compressed
+    private ByteBuffer data(final Entry entry) throws IOException {
+        final long offset = this.dataOffset(entry) - this.base;
+        return this.mapping().slice((int) offset, (int) entry.compressedSize());
+    }
+
+    // The whole region is mapped once, slices of it are handed out for every entry that is read
+    private ByteBuffer mapping() throws IOException {
+        ByteBuffer mapping = this.mapping;
+        if (mapping == null) {
+            synchronized (this) {
+                mapping = this.mapping;
+                if (mapping == null) {
+                    if (this.length > Integer.MAX_VALUE) {
+                        throw new IOException(this.file + " is too large to be mapped");
+                    }
+                    mapping = this.channel.map(FileChannel.MapMode.READ_ONLY, this.base, this.length).order(ByteOrder.LITTLE_ENDIAN);
+                    this.mapping = mapping;
+                }
+            }
+        }
+        return mapping;
+    }
+
+    private long dataOffset(final Entry entry) throws IOException {
+        final ByteBuffer header = this.mapping != null
+            ? this.mapping.slice((int) entry.localHeaderOffset(), LOCAL_FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+            : this.read(entry.localHeaderOffset(), LOCAL_FILE_HEADER_SIZE);
+        if (header.getInt(0) != LOCAL_FILE_HEADER) {
+            throw new IOException("Invalid local file header for " + entry.name());
+        }
+        final int nameLength = Short.toUnsignedInt(header.getShort(26));
+        final int extraLength = Short.toUnsignedInt(header.getShort(28));
+        return this.base + entry.localHeaderOffset() + LOCAL_FILE_HEADER_SIZE + nameLength + extraLength;
+    }
+
+    private ByteBuffer read(final long offset, final int length) throws IOException {
+        return read(this.channel, this.base + offset, length);
+    }
+
+    static ZipIndex open(final Path file, final FileChannel channel, final long base, final long length) throws IOException {
+        final int tailLength = (int) Math.min(length, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE);
+        final ByteBuffer tail = read(channel, base + length - tailLength, tailLength);
+
+        int end = -1;
+        for (int i = tailLength - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            return null;
+        }
+
+        final int count = Short.toUnsignedInt(tail.getShort(end + 10));
+        final long directorySize = Integer.toUnsignedLong(tail.getInt(end + 12));
+        final long directoryOffset = Integer.toUnsignedLong(tail.getInt(end + 16));
+        if (count == 0xFFFF || directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL) {
+            // zip64
+            return null;
+        }
+        if (directoryOffset + directorySize > length) {
+            return null;
+        }
+
+        final ByteBuffer directory = read(channel, base + directoryOffset, (int) directorySize);
+        final Map<String, Entry> entries = new HashMap<>(count * 2);
+        int pos = 0;
+        for (int i = 0; i < count; i++) {
+            if (directory.getInt(pos) != CENTRAL_DIRECTORY_HEADER) {
+                throw new IOException("Invalid central directory header");
+            }
+            final int method = Short.toUnsignedInt(directory.getShort(pos + 10));
+            final long compressedSize = Integer.toUnsignedLong(directory.getInt(pos + 20));
+            final long size = Integer.toUnsignedLong(directory.getInt(pos + 24));
+            final int nameLength = Short.toUnsignedInt(directory.getShort(pos + 28));
+            final int extraLength = Short.toUnsignedInt(directory.getShort(pos + 30));
+            final int commentLength = Short.toUnsignedInt(directory.getShort(pos + 32));
+            final long localHeaderOffset = Integer.toUnsignedLong(directory.getInt(pos + 42));
+
+            final byte[] nameBytes = new byte[nameLength];
+            directory.get(pos + 46, nameBytes);
+            final String name = new String(nameBytes, StandardCharsets.UTF_8);
+            entries.put(name, new Entry(name, method, compressedSize, size, localHeaderOffset));
+
+            pos += 46 + nameLength + extraLength + commentLength;
+        }
+
+        return new ZipIndex(file, channel, base, length, entries);
+    }
+
+    private static ByteBuffer read(final FileChannel channel, final long offset, final int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of zip file");
+            }
+        }
+        return buffer.flip();
+    }
+
+    // The launcher jar itself, null when we don't run from a jar (e.g. from an IDE) or it can't be read
+    static ZipIndex bundle() {
+        return BundleHolder.BUNDLE;
+    }
+
+    private static final class BundleHolder {
+        private static final ZipIndex BUNDLE = openBundle();
+
+        private static ZipIndex openBundle() {
+            final Path launcherJar;
+            try {
+                launcherJar = UrlUtil.getCodeSource(ZipIndex.class);
+            } catch (final IllegalArgumentException e) {
+                return null;
+            }
+            if (launcherJar == null || !Files.isRegularFile(launcherJar)) {
+                return null;
+            }
+
+            try {
+                // Kept open for the lifetime of the launcher
+                final FileChannel channel = FileChannel.open(launcherJar, READ);
+                final ZipIndex index = open(launcherJar, channel, 0, channel.size());
+                if (index == null) {
+                    channel.close();
+                }
+                return index;
+            } catch (final IOException e) {
+                Lightclip.logger.warn("Failed to read the central directory of {}, extracting through the class loader", launcherJar);
+                return null;
+            }
+        }
+    }
+
+    record Entry(String name, int method, long compressedSize, long size, long localHeaderOffset) {
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return this.buffer.hasRemaining() ? this.buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!this.buffer.hasRemaining()) {
+                return -1;
+            }
+            final int read = Math.min(len, this.buffer.remaining());
+            this.buffer.get(b, off, read);
+            return read;
+        }
+
+        @Override
+        public long skip(final long n) {
+            final int skipped = (int) Math.max(0, Math.min(n, this.buffer.remaining()));
+            this.buffer.position(this.buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return this.buffer.remaining();
+        }
+    }
+
+    private static final class EntryInflaterInputStream extends InflaterInputStream {
+        private boolean eof;
+        private boolean closed;
+
+        EntryInflaterInputStream(final InputStream in) {
+            super(in, new Inflater(true), 8192);
+        }
+
+        // Same as ZipFile, raw inflation may need one dummy byte after the end of the data
+        @Override
+        protected void fill() throws IOException {
+            if (this.eof) {
+                throw new EOFException("Unexpected end of deflated entry");
+            }
+            this.len = this.in.read(this.buf, 0, this.buf.length);
+            if (this.len == -1) {
+                this.buf[0] = 0;
+                this.len = 1;
+                this.eof = true;
+            }
+            this.inf.setInput(this.buf, 0, this.len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!this.closed) {
+                this.closed = true;
+                super.close();
+                this.inf.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package dev.menthamc.lightclip.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("dev.menthamc.lightclip.ApplyPatch")
+@Label("Apply Patch")
+@Category("Lightclip")
+@Enabled(false)
+@StackTrace(false)
+public final class ApplyPatchEvent extends jdk.jfr.Event {
+
+    @Label("Path")
+    public String path;
+
+    // False if the patched file was already there
+    @Label("Applied")
+    public boolean applied;
+
+    @Label("Mapped")
+    public boolean mapped;
+}
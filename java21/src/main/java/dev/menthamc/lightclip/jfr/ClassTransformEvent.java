@@ -0,0 +1,39 @@
+package dev.menthamc.lightclip.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("dev.menthamc.lightclip.ClassTransform")
+@Label("Class Transform")
+@Category("Lightclip")
+@Enabled(false)
+@StackTrace(false)
+public final class ClassTransformEvent extends jdk.jfr.Event {
+
+    @Label("Class Name")
+    public String className;
+
+    @Label("Size")
+    @DataAmount
+    public int size;
+
+    @Label("Mixin Transform")
+    @Timespan(Timespan.NANOSECONDS)
+    public long mixinDuration;
+
+    @Label("Access Widener")
+    @Timespan(Timespan.NANOSECONDS)
+    public long accessWidenerDuration;
+
+    @Label("Write")
+    @Timespan(Timespan.NANOSECONDS)
+    public long writeDuration;
+
+    @Label("Widened")
+    public boolean widened;
+}
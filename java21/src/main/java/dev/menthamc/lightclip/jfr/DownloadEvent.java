@@ -0,0 +1,26 @@
+package dev.menthamc.lightclip.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("dev.menthamc.lightclip.Download")
+@Label("Download")
+@Category("Lightclip")
+@Enabled(false)
+@StackTrace(false)
+public final class DownloadEvent extends jdk.jfr.Event {
+
+    @Label("File Name")
+    public String fileName;
+
+    @Label("Size")
+    @DataAmount
+    public long size;
+
+    @Label("Success")
+    public boolean success;
+}
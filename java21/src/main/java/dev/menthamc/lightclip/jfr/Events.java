@@ -0,0 +1,40 @@
+package dev.menthamc.lightclip.jfr;
+
+import jdk.jfr.FlightRecorder;
+
+// Initializing the first event class sets up JFR's metadata, which takes a few hundred milliseconds when JFR isn't
+// running yet. Events are only created once it is, so a boot without a recording never pays for that.
+// The events are returned already begun, null means there is nothing to record.
+public final class Events {
+
+    private Events() {}
+
+    public static HashCheckEvent hashCheck() {
+        return FlightRecorder.isInitialized() ? begin(new HashCheckEvent()) : null;
+    }
+
+    public static ExtractFileEvent extractFile() {
+        return FlightRecorder.isInitialized() ? begin(new ExtractFileEvent()) : null;
+    }
+
+    public static ApplyPatchEvent applyPatch() {
+        return FlightRecorder.isInitialized() ? begin(new ApplyPatchEvent()) : null;
+    }
+
+    public static DownloadEvent download() {
+        return FlightRecorder.isInitialized() ? begin(new DownloadEvent()) : null;
+    }
+
+    public static PluginScanEvent pluginScan() {
+        return FlightRecorder.isInitialized() ? begin(new PluginScanEvent()) : null;
+    }
+
+    public static ClassTransformEvent classTransform() {
+        return FlightRecorder.isInitialized() ? begin(new ClassTransformEvent()) : null;
+    }
+
+    private static <T extends jdk.jfr.Event> T begin(final T event) {
+        event.begin();
+        return event;
+    }
+}
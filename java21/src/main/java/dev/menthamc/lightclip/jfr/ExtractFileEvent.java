@@ -0,0 +1,25 @@
+package dev.menthamc.lightclip.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("dev.menthamc.lightclip.ExtractFile")
+@Label("Extract File")
+@Category("Lightclip")
+@Enabled(false)
+@StackTrace(false)
+public final class ExtractFileEvent extends jdk.jfr.Event {
+
+    @Label("Path")
+    public String path;
+
+    @Label("Target")
+    public String target;
+
+    // verified, nested, bundle or original
+    @Label("Source")
+    public String source;
+}
@@ -0,0 +1,30 @@
+package dev.menthamc.lightclip.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("dev.menthamc.lightclip.HashCheck")
+@Label("Hash Check")
+@Category("Lightclip")
+@Enabled(false)
+@StackTrace(false)
+public final class HashCheckEvent extends jdk.jfr.Event {
+
+    @Label("File")
+    public String file;
+
+    @Label("Size")
+    @DataAmount
+    public long size;
+
+    @Label("Valid")
+    public boolean valid;
+
+    // The file wasn't hashed at all, the verification manifest still trusted it
+    @Label("Trusted")
+    public boolean trusted;
+}
@@ -0,0 +1,21 @@
+package dev.menthamc.lightclip.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("dev.menthamc.lightclip.PluginScan")
+@Label("Plugin Scan")
+@Category("Lightclip")
+@Enabled(false)
+@StackTrace(false)
+public final class PluginScanEvent extends jdk.jfr.Event {
+
+    @Label("Plugin Jars")
+    public int pluginJars;
+
+    @Label("Mixin Plugins")
+    public int mixinPlugins;
+}
@@ -13,17 +13,20 @@ import org.objectweb.asm.Opcodes;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URLClassLoader;
+import java.util.Set;
 
 public class AccessWidenerManager {
     private static final Logger logger = new SimpleLogger("AccessWidener");
     private static final String namespace = "named";
     private static final AccessWidener instance = new AccessWidener();
+    private static Set<String> targets = Set.of();
 
     public static void initAccessWidener(URLClassLoader classLoader) {
         AccessWidenerReader reader = new AccessWidenerReader(instance);
         for (String config : MixinJarResolver.accessWidenerConfigs) {
             applyAccessWidenerConfig(classLoader, config, reader);
         }
+        targets = Set.copyOf(instance.getTargets());
     }
 
     private static void applyAccessWidenerConfig(URLClassLoader classLoader, String config, AccessWidenerReader reader) {
@@ -38,11 +41,24 @@ public class AccessWidenerManager {
         }
     }
 
-    public static byte[] applyAccessWidener(byte[] classData) {
+    // The visitor leaves classes no config names alone, so they are handed back as they are without any ASM work.
+    // The class name is in dot format like the targets, which include the outer classes of every widened inner class
+    public static boolean isTarget(String className) {
+        return targets.contains(className);
+    }
+
+    public static byte[] applyAccessWidener(String className, byte[] classData) {
+        if (!isTarget(className)) {
+            return classData;
+        }
         ClassReader reader = new ClassReader(classData);
         ClassWriter writer = new ClassWriter(reader, 0);
-        ClassVisitor visitor = AccessWidenerClassVisitor.createClassVisitor(Opcodes.ASM9, writer, instance);
-        reader.accept(visitor, 0);
+        reader.accept(createClassVisitor(writer), 0);
         return writer.toByteArray();
     }
+
+    // For widening a class while it is written by someone else
+    public static ClassVisitor createClassVisitor(ClassVisitor next) {
+        return AccessWidenerClassVisitor.createClassVisitor(Opcodes.ASM9, next, instance);
+    }
 }
@@ -0,0 +1,118 @@
+package org.leavesmc.leavesclip.mixin;
+
+import org.jetbrains.annotations.NotNull;
+import org.spongepowered.asm.mixin.MixinEnvironment;
+import org.spongepowered.asm.mixin.Mixins;
+import org.spongepowered.asm.mixin.extensibility.IMixinConfig;
+import org.spongepowered.asm.mixin.transformer.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Decides which classes are worth handing to the mixin transformer. The targets of a config are only known once Mixin
+// has selected and prepared it, which happens during a transformation and takes the config off Mixins#getConfigs.
+// Until every config is selected all classes go through the transformer. After that only the targets, their inner
+// classes and the mixin packages do, everything else is defined as it is.
+// The class loader reports the outermost transformation of each thread, and the configs waiting to be selected when it
+// starts are the ones it may select. Until a transformation that started after a config was seen has returned, the
+// config may be selected but not prepared, its targets still empty, and again all classes go through the transformer.
+// Config plugins are loaded in just that window, and other threads may be loading classes meanwhile. Configs added
+// later are picked up the same way.
+// `lightclip.mixin.include` lists packages that are always transformed, for config plugins that pick their targets on
+// the fly, and `lightclip.mixin.exclude` packages that never are, even if a mixin targets them.
+public class MixinTargetIndex {
+    private static final List<String> include = packages("lightclip.mixin.include");
+    private static final List<String> exclude = packages("lightclip.mixin.exclude");
+
+    // Every config seen waiting to be selected, and how often that set grew
+    private final Set<Config> configs = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger version = new AtomicInteger();
+    // The newest version a finished transformation started with, every config up to it is prepared
+    private final AtomicInteger prepared = new AtomicInteger();
+    private volatile Snapshot snapshot;
+
+    public MixinTargetIndex(Collection<Config> configs) {
+        if (this.configs.addAll(configs)) {
+            version.incrementAndGet();
+        }
+    }
+
+    public boolean shouldTransform(@NotNull String name) {
+        if (matches(include, name)) return true;
+        if (matches(exclude, name)) return false;
+        if (!Mixins.getConfigs().isEmpty()) return true;
+
+        int current = version.get();
+        if (prepared.get() < current) return true;
+        MixinEnvironment.Phase phase = MixinEnvironment.getCurrentEnvironment().getPhase();
+        Snapshot last = snapshot;
+        if (last == null || last.phase() != phase || last.version() != current) {
+            last = build(phase, current);
+            snapshot = last;
+        }
+        return last.isTarget(name);
+    }
+
+    // Called before the transformer runs, returns what to pass to transformed
+    public int transforming() {
+        for (Config config : Mixins.getConfigs()) {
+            if (configs.add(config)) {
+                version.incrementAndGet();
+            }
+        }
+        return version.get();
+    }
+
+    // Called once the transformer returned or failed, the configs it selected are prepared by then
+    public void transformed(int version) {
+        prepared.accumulateAndGet(version, Math::max);
+    }
+
+    private @NotNull Snapshot build(MixinEnvironment.Phase phase, int version) {
+        Set<String> targets = new HashSet<>();
+        List<String> mixinPackages = new ArrayList<>();
+        for (Config config : configs) {
+            IMixinConfig mixinConfig = config.getConfig();
+            targets.addAll(mixinConfig.getTargets());
+            if (mixinConfig.getMixinPackage() != null) {
+                mixinPackages.add(mixinConfig.getMixinPackage());
+            }
+        }
+        return new Snapshot(phase, version, Set.copyOf(targets), List.copyOf(mixinPackages));
+    }
+
+    private static boolean matches(List<String> packages, String name) {
+        for (String prefix : packages) {
+            if (name.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    private static @NotNull List<String> packages(String property) {
+        String value = System.getProperty(property, "");
+        return Arrays.stream(value.split(","))
+            .map(String::trim)
+            .filter(prefix -> !prefix.isEmpty())
+            .map(prefix -> prefix.endsWith(".") ? prefix : prefix + ".")
+            .toList();
+    }
+
+    private record Snapshot(MixinEnvironment.Phase phase, int version, Set<String> targets, List<String> mixinPackages) {
+
+        boolean isTarget(String name) {
+            if (targets.contains(name)) return true;
+            // Inner classes of a target are rewritten along with it, they are members of its nest
+            for (int i = name.lastIndexOf('$'); i > 0; i = name.lastIndexOf('$', i - 1)) {
+                if (targets.contains(name.substring(0, i))) return true;
+            }
+            // Mixin refuses to load mixin classes as regular classes, it has to see them to do so
+            return matches(mixinPackages, name);
+        }
+    }
+}
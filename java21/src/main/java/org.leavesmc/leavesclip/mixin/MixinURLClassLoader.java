@@ -1,22 +1,47 @@
 package org.leavesmc.leavesclip.mixin;
 
+import dev.menthamc.lightclip.ClassPrefetcher;
+import dev.menthamc.lightclip.jfr.ClassTransformEvent;
+import dev.menthamc.lightclip.jfr.Events;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.tree.ClassNode;
 import org.spongepowered.asm.mixin.MixinEnvironment;
 import org.spongepowered.asm.mixin.transformer.IMixinTransformer;
+import org.spongepowered.asm.transformers.MixinClassReader;
+import org.spongepowered.asm.transformers.MixinClassWriter;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
 import java.security.CodeSource;
 import java.security.ProtectionDomain;
 import java.security.cert.Certificate;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class MixinURLClassLoader extends URLClassLoader {
 
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
     private final IMixinTransformer transformer;
     private final ProtectionDomain dummyDomain = new ProtectionDomain(new CodeSource(this.getURLs()[0], (Certificate[]) null), null);
+    private volatile MixinTargetIndex targetIndex;
+    private volatile ClassPrefetcher prefetcher;
+    // The classes being loaded, and the class each thread waits for another thread to load
+    private final Map<String, Loading> inFlight = new ConcurrentHashMap<>();
+    private final Map<Thread, String> waiting = new ConcurrentHashMap<>();
+    // Set while the thread is inside the transformer, which may hold Mixin's lock
+    private final ThreadLocal<Boolean> transforming = ThreadLocal.withInitial(() -> false);
 
     public MixinURLClassLoader(URL[] urls, ClassLoader parent) {
         super(urls, parent);
@@ -27,6 +52,15 @@ public class MixinURLClassLoader extends URLClassLoader {
         this.transformer = (IMixinTransformer) active;
     }
 
+    // Without an index every class goes through the transformer
+    public void setTargetIndex(MixinTargetIndex targetIndex) {
+        this.targetIndex = targetIndex;
+    }
+
+    public void setPrefetcher(ClassPrefetcher prefetcher) {
+        this.prefetcher = prefetcher;
+    }
+
     @Override
     public @Nullable URL getResource(String name) {
         Objects.requireNonNull(name);
@@ -41,21 +75,206 @@ public class MixinURLClassLoader extends URLClassLoader {
         }
     }
 
+    // Being parallel capable, the JDK would hold the lock of the class name while findClass transforms and defines the
+    // class. Mixin holds a lock of its own while transforming and may load other classes meanwhile, and defining a class
+    // loads and transforms its superclass, so two threads could each hold one lock and wait for the other. No lock is
+    // held here, findClass makes threads asking for the same class wait for the one loading it where that is safe.
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        Class<?> result = findLoadedClass(name);
+        if (result == null) {
+            ClassLoader parent = getParent();
+            try {
+                result = parent != null ? parent.loadClass(name) : Class.forName(name, false, null);
+            } catch (ClassNotFoundException e) {
+                result = findClass(name);
+            }
+        }
+        if (resolve) {
+            resolveClass(result);
+        }
+        return result;
+    }
+
     @Override
     protected Class<?> findClass(@NotNull String name) throws ClassNotFoundException {
+        Thread thread = Thread.currentThread();
+        Loading loading = new Loading(thread, new CompletableFuture<>());
+        Loading current = inFlight.putIfAbsent(name, loading);
+        if (current == null) {
+            try {
+                // The class may have been defined just before the previous thread loading it was done
+                Class<?> result = findLoadedClass(name);
+                if (result == null) {
+                    result = load(name);
+                }
+                loading.result().complete(result);
+                return result;
+            } catch (ClassNotFoundException | RuntimeException | Error e) {
+                loading.result().completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(name, loading);
+            }
+        }
+
+        // Waiting would never end if the class is needed to load itself, if this thread holds Mixin's lock or the lock
+        // the JVM takes on subclasses that aren't parallel capable, or if the other thread waits for this one. Then the
+        // class is loaded twice, the first definition wins
+        if (current.owner() == thread || transforming.get() || !isRegisteredAsParallelCapable() || !await(name, current)) {
+            return load(name);
+        }
+        try {
+            return current.result().join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ClassNotFoundException notFound) throw notFound;
+            if (cause instanceof RuntimeException runtime) throw runtime;
+            if (cause instanceof Error error) throw error;
+            throw new ClassNotFoundException(name, cause);
+        } finally {
+            waiting.remove(thread);
+        }
+    }
+
+    // Records that this thread waits for the class, unless that closes a cycle of threads waiting for each other
+    private boolean await(String name, Loading current) {
+        Thread thread = Thread.currentThread();
+        waiting.put(thread, name);
+        Thread owner = current.owner();
+        for (int i = 0; i <= waiting.size(); i++) {
+            if (owner == thread) {
+                waiting.remove(thread);
+                return false;
+            }
+            String awaited = waiting.get(owner);
+            Loading next = awaited == null ? null : inFlight.get(awaited);
+            if (next == null) {
+                return true;
+            }
+            owner = next.owner();
+        }
+        return true;
+    }
+
+    private Class<?> load(@NotNull String name) throws ClassNotFoundException {
         String path = name.replace('.', '/') + ".class";
-        try (InputStream in = getResourceAsStream(path)) {
-            if (in == null) {
-                throw new ClassNotFoundException(name);
+        ClassTransformEvent event = Events.classTransform();
+        try {
+            MixinEnvironment environment = MixinEnvironment.getCurrentEnvironment();
+            ClassPrefetcher prefetcher = this.prefetcher;
+            byte[] original = prefetcher != null ? prefetcher.take(name) : null;
+            if (original == null) {
+                original = readClass(path);
             }
+            if (original == null) {
+                // Mixin's synthetic classes aren't on the class path, the transformer generates them
+                byte[] generated;
+                boolean outer = transforming.get();
+                transforming.set(true);
+                try {
+                    generated = transformer.generateClass(environment, name);
+                } finally {
+                    transforming.set(outer);
+                }
+                if (generated == null) {
+                    throw new ClassNotFoundException(name);
+                }
+                return define(name, ByteBuffer.wrap(generated));
+            }
+
+            // Classes no mixin targets skip the transformer
+            MixinTargetIndex index = targetIndex;
+            boolean transform = index == null || index.shouldTransform(name);
 
-            byte[] original = in.readAllBytes();
-            byte[] mixin = transformer.transformClass(MixinEnvironment.getCurrentEnvironment(), name, original);
-            byte[] transformed = AccessWidenerManager.applyAccessWidener(mixin);
+            // The clock is only read while a recording has the event enabled
+            boolean timed = event != null && event.isEnabled();
+            long mixinStart = timed ? System.nanoTime() : 0;
+            long widenStart = mixinStart;
+            long writeStart;
+            boolean widened = AccessWidenerManager.isTarget(name);
+            byte[] transformed;
+            if (transform) {
+                // The class is parsed once for Mixin and written once, with the access widener applied on the way out
+                ClassNode node = new ClassNode();
+                new MixinClassReader(original, name).accept(node, ClassReader.EXPAND_FRAMES);
+                boolean mixed;
+                boolean outer = transforming.get();
+                transforming.set(true);
+                // Configs are selected and prepared within the outermost transformation of a thread
+                boolean reported = index != null && !outer;
+                int configs = reported ? index.transforming() : 0;
+                try {
+                    mixed = transformer.transformClass(environment, name, node);
+                } finally {
+                    if (reported) {
+                        index.transformed(configs);
+                    }
+                    transforming.set(outer);
+                }
+                widenStart = timed ? System.nanoTime() : 0;
+                if (!mixed) {
+                    // Mixin left the class alone, so the original bytes are still good
+                    transformed = widened ? AccessWidenerManager.applyAccessWidener(name, original) : original;
+                    writeStart = timed ? System.nanoTime() : 0;
+                } else if (widened && timed) {
+                    // While recording the widening gets a pass of its own, so it is timed apart from writing
+                    ClassNode widenedNode = new ClassNode();
+                    node.accept(AccessWidenerManager.createClassVisitor(widenedNode));
+                    writeStart = System.nanoTime();
+                    transformed = write(widenedNode, false);
+                } else {
+                    writeStart = widenStart;
+                    transformed = write(node, widened);
+                }
+            } else {
+                transformed = AccessWidenerManager.applyAccessWidener(name, original);
+                writeStart = timed ? System.nanoTime() : 0;
+            }
+            long writeEnd = timed ? System.nanoTime() : 0;
 
-            return defineClass(name, transformed, 0, transformed.length, dummyDomain);
+            Class<?> result = define(name, ByteBuffer.wrap(transformed));
+            if (event != null && event.shouldCommit()) {
+                event.className = name;
+                event.size = transformed.length;
+                event.mixinDuration = widenStart - mixinStart;
+                event.accessWidenerDuration = writeStart - widenStart;
+                event.writeDuration = writeEnd - writeStart;
+                event.widened = widened;
+                event.commit();
+            }
+            return result;
         } catch (Exception e) {
             throw new ClassNotFoundException(name, e);
         }
     }
-}
\ No newline at end of file
+
+    private byte[] readClass(String path) throws IOException {
+        try (InputStream in = getResourceAsStream(path)) {
+            return in == null ? null : in.readAllBytes();
+        }
+    }
+
+    // A class asked for from within the transformer while another thread loads it is transformed twice, the first
+    // definition wins
+    private Class<?> define(String name, ByteBuffer bytes) {
+        try {
+            return defineClass(name, bytes, dummyDomain);
+        } catch (LinkageError e) {
+            Class<?> loaded = findLoadedClass(name);
+            if (loaded != null) {
+                return loaded;
+            }
+            throw e;
+        }
+    }
+
+    private static byte[] write(ClassNode node, boolean widened) {
+        // Mixin's writer knows the class hierarchy it needs to compute the frames of the methods mixins changed
+        ClassWriter writer = new MixinClassWriter(ClassWriter.COMPUTE_FRAMES);
+        node.accept(widened ? AccessWidenerManager.createClassVisitor(writer) : writer);
+        return writer.toByteArray();
+    }
+
+    private record Loading(Thread owner, CompletableFuture<Class<?>> result) {}
+}
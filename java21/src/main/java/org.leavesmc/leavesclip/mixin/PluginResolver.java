@@ -1,6 +1,10 @@
 package org.leavesmc.leavesclip.mixin;
 
 import com.google.gson.Gson;
+import dev.menthamc.lightclip.BootReport;
+import dev.menthamc.lightclip.Hashing;
+import dev.menthamc.lightclip.jfr.PluginScanEvent;
+import dev.menthamc.lightclip.jfr.Events;
 import org.leavesmc.leavesclip.logger.Logger;
 import org.leavesmc.leavesclip.logger.SimpleLogger;
 import org.jetbrains.annotations.Contract;
@@ -11,10 +15,6 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.security.DigestInputStream;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
@@ -46,6 +46,7 @@ public class PluginResolver {
     }
 
     private static void processPlugins(@NotNull File pluginsDir) {
+        PluginScanEvent event = Events.pluginScan();
         File[] jarFiles = pluginsDir.listFiles((dir, name) -> name.toLowerCase().endsWith(".jar"));
         if (jarFiles == null || jarFiles.length == 0) return;
 
@@ -67,6 +68,12 @@ public class PluginResolver {
             .map(PluginResolver::extractMixinJarAndToPluginMeta)
             .filter(PluginResolver::notNull)
             .toList();
+
+        if (event != null && event.shouldCommit()) {
+            event.pluginJars = jarFiles.length;
+            event.mixinPlugins = leavesPluginMetas.size();
+            event.commit();
+        }
     }
 
     private static void cleanOutdatedMixinJars(@NotNull File mixinsDir) {
@@ -189,15 +196,17 @@ public class PluginResolver {
             deleteAndCreateNewFile(mixinJarFile);
         }
 
-        if (extractMixinJar(
-            jarFile,
-            pluginJarHash,
-            mixinJarFile,
-            pluginMeta
-        )) {
-            return pluginMeta;
-        } else {
-            return null;
+        try (BootReport.Phase ignored = BootReport.phase("mixinJar", pluginFile.getName())) {
+            if (extractMixinJar(
+                jarFile,
+                pluginJarHash,
+                mixinJarFile,
+                pluginMeta
+            )) {
+                return pluginMeta;
+            } else {
+                return null;
+            }
         }
     }
 
@@ -277,25 +286,11 @@ public class PluginResolver {
     }
 
     private static @NotNull String calcMd5(File file) {
-        MessageDigest md;
         try {
-            md = MessageDigest.getInstance("MD5");
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
-        }
-        try (InputStream is = Files.newInputStream(file.toPath());
-             DigestInputStream dis = new DigestInputStream(is, md)) {
-            byte[] buffer = new byte[8192];
-            //noinspection StatementWithEmptyBody
-            while (dis.read(buffer) != -1) ;
+            return Hashing.toHex(Hashing.md5(file.toPath()));
         } catch (IOException e) {
             logger.warn("Failed to read file '{}'", file.getAbsolutePath());
             return "";
         }
-        StringBuilder sb = new StringBuilder(32);
-        for (byte b : md.digest()) {
-            sb.append(String.format("%02x", b));
-        }
-        return sb.toString();
     }
 }
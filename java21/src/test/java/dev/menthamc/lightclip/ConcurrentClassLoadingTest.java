@@ -0,0 +1,120 @@
+package dev.menthamc.lightclip;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.leavesmc.leavesclip.mixin.MixinURLClassLoader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+// Many threads load the same classes through one mixin class loader at once, the superclasses and interfaces of gson
+// make them ask for each other's classes while defining. Every class must be read and transformed once, and nothing may
+// deadlock. Each round takes a fresh class loader without a target index, so every class goes through Mixin
+@Timeout(120)
+class ConcurrentClassLoadingTest {
+
+    private static final int THREADS = 32;
+    private static final int ROUNDS = 5;
+
+    @Test
+    void loadsEveryClassOnce() throws Exception {
+        MixinFixture.bootstrap("lightclip-test.mixins.json");
+        final URL gson = Gson.class.getProtectionDomain().getCodeSource().getLocation();
+        final List<String> names = classNames(Path.of(gson.toURI()));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                final CountingClassLoader classLoader = new CountingClassLoader(
+                    new URL[]{gson, MixinFixture.TEST_CLASSES},
+                    MixinFixture.hiding("com.google.gson.", "dev.menthamc.lightclip.test.")
+                );
+                final Map<String, Class<?>> loaded = new ConcurrentHashMap<>();
+                final CountDownLatch start = new CountDownLatch(1);
+                final List<Future<?>> threads = new ArrayList<>();
+                for (int thread = 0; thread < THREADS; thread++) {
+                    final List<String> order = new ArrayList<>(names);
+                    Collections.shuffle(order, new Random(round * THREADS + thread));
+                    threads.add(executor.submit(() -> {
+                        start.await();
+                        for (final String name : order) {
+                            final Class<?> result = classLoader.loadClass(name);
+                            final Class<?> previous = loaded.putIfAbsent(name, result);
+                            assertSame(previous == null ? result : previous, result, name);
+                        }
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (final Future<?> thread : threads) {
+                    thread.get(60, TimeUnit.SECONDS);
+                }
+
+                assertEquals(names.size(), loaded.size());
+                for (final String name : names) {
+                    assertEquals(1, classLoader.reads(name), name);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<String> classNames(final Path jar) throws IOException {
+        final List<String> names = new ArrayList<>();
+        try (final ZipFile zip = new ZipFile(jar.toFile())) {
+            zip.stream()
+                .map(entry -> entry.getName())
+                .filter(name -> name.startsWith("com/google/gson/") && name.endsWith(".class"))
+                .forEach(name -> names.add(name.substring(0, name.length() - ".class".length()).replace('/', '.')));
+        }
+        names.add("dev.menthamc.lightclip.test.target.Greeter");
+        names.add("dev.menthamc.lightclip.test.target.Plain");
+        return names;
+    }
+
+    // Counts how often each class file is read, which the mixin class loader does once per transformation
+    private static final class CountingClassLoader extends MixinURLClassLoader {
+        static {
+            ClassLoader.registerAsParallelCapable();
+        }
+
+        private final Map<String, AtomicInteger> reads = new ConcurrentHashMap<>();
+
+        CountingClassLoader(final URL[] urls, final ClassLoader parent) {
+            super(urls, parent);
+        }
+
+        @Override
+        public InputStream getResourceAsStream(final String name) {
+            if (name.endsWith(".class")) {
+                this.reads.computeIfAbsent(name, key -> new AtomicInteger()).incrementAndGet();
+            }
+            return super.getResourceAsStream(name);
+        }
+
+        int reads(final String className) {
+            final AtomicInteger count = this.reads.get(className.replace('.', '/') + ".class");
+            return count == null ? 0 : count.get();
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package dev.menthamc.lightclip;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Races and chunked downloads against local servers standing in for mirrors. The build runs the tests with a stall
+// timeout of half a second and chunks of one MiB, see java21/build.gradle.kts
+@Timeout(60)
+class DownloaderTest {
+
+    private static final int SMALL = 512 * 1024;
+    private static final int LARGE = 3 * 1024 * 1024 + 123;
+    private static final long CHUNK_SIZE = 1024 * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    private final List<Mirror> mirrors = new ArrayList<>();
+
+    @AfterEach
+    void stopMirrors() {
+        this.mirrors.forEach(Mirror::stop);
+    }
+
+    @Test
+    void fastestMirrorWins() throws IOException {
+        final byte[] data = data(SMALL);
+        final Mirror slow = this.mirror(data).firstByteDelay(1000);
+        final Mirror fast = this.mirror(data);
+
+        this.download(data, slow, fast);
+
+        assertEquals(1, fast.completed.get());
+        assertEquals(0, slow.completed.get());
+    }
+
+    @Test
+    void slowMirrorIsCancelled() throws Exception {
+        final byte[] data = data(SMALL);
+        final Mirror slow = this.mirror(data).firstByteDelay(1000);
+        final Mirror fast = this.mirror(data);
+
+        this.download(data, slow, fast);
+
+        // The slow mirror finds its connection closed once it gets to answer
+        assertTrue(slow.aborted.await(10, TimeUnit.SECONDS), "the slow mirror was not disconnected");
+        assertEquals(0, slow.completed.get());
+    }
+
+    @Test
+    void stalledMirrorIsSwitchedAway() throws IOException {
+        final byte[] data = data(SMALL);
+        final Mirror stalling = this.mirror(data).acceptRanges().stallAfter(SMALL / 2);
+        final Mirror backup = this.mirror(data).acceptRanges().firstByteDelay(300);
+
+        this.download(data, stalling, backup);
+
+        assertEquals(0, stalling.completed.get());
+        assertEquals(1, backup.completed.get());
+        // The backup picks up where the stalled mirror stopped
+        final String resumed = backup.lastRange();
+        assertTrue(resumed.startsWith("bytes=") && !resumed.startsWith("bytes=0-"), "resumed with " + resumed);
+    }
+
+    @Test
+    void brokenMirrorIsSkipped() throws IOException {
+        final byte[] data = data(SMALL);
+        final Mirror broken = this.mirror(data).status(500);
+        final Mirror working = this.mirror(data).firstByteDelay(200);
+
+        this.download(data, broken, working);
+
+        assertEquals(1, broken.requests.size());
+        assertEquals(1, working.completed.get());
+    }
+
+    @Test
+    void failsWhenEveryMirrorIsBroken() {
+        final byte[] data = data(SMALL);
+        final Mirror first = this.mirror(data).status(500);
+        final Mirror second = this.mirror(data).status(404);
+
+        assertThrows(IOException.class, () -> this.download(data, first, second));
+    }
+
+    @Test
+    void downloadsRangesInChunks() throws IOException {
+        final byte[] data = data(LARGE);
+        final Mirror mirror = this.mirror(data).acceptRanges();
+
+        final Path output = this.download(data, mirror);
+
+        // The first request only finds out the mirror supports ranges, then every chunk is a request of its own
+        assertEquals("", mirror.requests.peek());
+        assertEquals(1 + chunks(data), mirror.requests.size());
+        assertTrue(mirror.requests.contains("bytes=" + 3 * CHUNK_SIZE + "-" + (LARGE - 1)));
+        assertFalse(Files.exists(output.resolveSibling(output.getFileName() + ".chunks")));
+    }
+
+    @Test
+    void resumesFromRecordedChunks() throws IOException {
+        final byte[] data = data(LARGE);
+        final String lastChunk = "bytes=" + 3 * CHUNK_SIZE + "-" + (LARGE - 1);
+        final Mirror failing = this.mirror(data).acceptRanges().failRange(lastChunk);
+        final Path output = this.tempDir.resolve("original.jar");
+
+        assertThrows(IOException.class, () -> Downloader.download("original", Hashing.sha256(data), List.of(failing.url()), output));
+        assertTrue(Files.exists(output.resolveSibling(output.getFileName() + ".chunks")));
+
+        final Mirror working = this.mirror(data).acceptRanges();
+        final byte[] hash = Downloader.download("original", Hashing.sha256(data), List.of(working.url()), output);
+
+        assertArrayEquals(Hashing.sha256(data), hash);
+        assertArrayEquals(data, Files.readAllBytes(output));
+        // Only the chunk that failed is fetched again
+        assertEquals(List.of("", lastChunk), List.copyOf(working.requests));
+    }
+
+    @Test
+    void keepsPartialDownloadWhenNoMirrorAnswers() throws IOException {
+        final byte[] data = data(LARGE);
+        final String lastChunk = "bytes=" + 3 * CHUNK_SIZE + "-" + (LARGE - 1);
+        final Mirror failing = this.mirror(data).acceptRanges().failRange(lastChunk);
+        final Path output = this.tempDir.resolve("original.jar");
+        final Path chunkFile = output.resolveSibling(output.getFileName() + ".chunks");
+
+        assertThrows(IOException.class, () -> Downloader.download("original", Hashing.sha256(data), List.of(failing.url()), output));
+        final long size = Files.size(output);
+        final String chunks = Files.readString(chunkFile);
+
+        final Mirror broken = this.mirror(data).status(500);
+        assertThrows(IOException.class, () -> Downloader.download("original", Hashing.sha256(data), List.of(broken.url()), output));
+
+        assertEquals(size, Files.size(output));
+        assertEquals(chunks, Files.readString(chunkFile));
+    }
+
+    @Test
+    void skipsTornChunkLine() throws IOException {
+        final byte[] data = data(LARGE);
+        final String lastChunk = "bytes=" + 3 * CHUNK_SIZE + "-" + (LARGE - 1);
+        final Mirror failing = this.mirror(data).acceptRanges().failRange(lastChunk);
+        final Path output = this.tempDir.resolve("original.jar");
+        final Path chunkFile = output.resolveSibling(output.getFileName() + ".chunks");
+
+        assertThrows(IOException.class, () -> Downloader.download("original", Hashing.sha256(data), List.of(failing.url()), output));
+        // A crash in the middle of recording the last chunk
+        Files.writeString(chunkFile, "0\tab1", StandardOpenOption.APPEND);
+
+        final Mirror working = this.mirror(data).acceptRanges();
+        Downloader.download("original", Hashing.sha256(data), List.of(working.url()), output);
+
+        assertArrayEquals(data, Files.readAllBytes(output));
+        assertEquals(List.of("", lastChunk), List.copyOf(working.requests));
+    }
+
+    @Test
+    void streamsWholeFileWithoutRangeSupport() throws IOException {
+        final byte[] data = data(LARGE);
+        final Mirror mirror = this.mirror(data);
+
+        this.download(data, mirror);
+
+        assertEquals(List.of(""), List.copyOf(mirror.requests));
+        assertEquals(1, mirror.completed.get());
+    }
+
+    @Test
+    void restartsWhenBackupIgnoresRange() throws IOException {
+        final byte[] data = data(SMALL);
+        final Mirror stalling = this.mirror(data).stallAfter(SMALL / 2);
+        final Mirror backup = this.mirror(data).firstByteDelay(300);
+
+        // The backup answers the range request with the whole file, which replaces what was downloaded so far
+        this.download(data, stalling, backup);
+
+        assertTrue(backup.lastRange().startsWith("bytes="));
+        assertEquals(1, backup.completed.get());
+    }
+
+    private Path download(final byte[] data, final Mirror... mirrors) throws IOException {
+        final Path output = this.tempDir.resolve("original.jar");
+        final List<URL> urls = new ArrayList<>();
+        for (final Mirror mirror : mirrors) {
+            urls.add(mirror.url());
+        }
+
+        final byte[] hash = Downloader.download("original", Hashing.sha256(data), urls, output);
+
+        assertArrayEquals(Hashing.sha256(data), hash);
+        assertArrayEquals(data, Files.readAllBytes(output));
+        return output;
+    }
+
+    private Mirror mirror(final byte[] data) {
+        final Mirror mirror = new Mirror(data);
+        this.mirrors.add(mirror);
+        return mirror;
+    }
+
+    private static byte[] data(final int size) {
+        final byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    private static int chunks(final byte[] data) {
+        return (int) ((data.length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+    }
+
+    // Serves one file, optionally late, broken, stalling halfway or without range support. Records the Range header of
+    // every request, an empty string if there was none
+    private static final class Mirror {
+        private static final int PIECE_SIZE = 8 * 1024;
+
+        private final byte[] data;
+        private final HttpServer server;
+        private final ExecutorService executor = Executors.newCachedThreadPool();
+        final Queue<String> requests = new ConcurrentLinkedQueue<>();
+        final AtomicInteger completed = new AtomicInteger();
+        final CountDownLatch aborted = new CountDownLatch(1);
+        private long firstByteDelay;
+        private boolean acceptRanges;
+        private int status = 200;
+        private long stallAfter = -1;
+        private String failRange;
+
+        Mirror(final byte[] data) {
+            this.data = data;
+            try {
+                this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            } catch (final IOException e) {
+                throw new IllegalStateException(e);
+            }
+            this.server.createContext("/", this::serve);
+            this.server.setExecutor(this.executor);
+            this.server.start();
+        }
+
+        Mirror firstByteDelay(final long millis) {
+            this.firstByteDelay = millis;
+            return this;
+        }
+
+        Mirror acceptRanges() {
+            this.acceptRanges = true;
+            return this;
+        }
+
+        Mirror status(final int status) {
+            this.status = status;
+            return this;
+        }
+
+        Mirror stallAfter(final long bytes) {
+            this.stallAfter = bytes;
+            return this;
+        }
+
+        Mirror failRange(final String range) {
+            this.failRange = range;
+            return this;
+        }
+
+        URL url() {
+            try {
+                return URI.create("http://127.0.0.1:" + this.server.getAddress().getPort() + "/original.jar").toURL();
+            } catch (final IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        String lastRange() {
+            String last = null;
+            for (final String range : this.requests) {
+                last = range;
+            }
+            return last;
+        }
+
+        void stop() {
+            this.server.stop(0);
+            this.executor.shutdownNow();
+        }
+
+        private void serve(final HttpExchange exchange) throws IOException {
+            try (exchange) {
+                final String range = exchange.getRequestHeaders().getFirst("Range");
+                this.requests.add(range == null ? "" : range);
+                Thread.sleep(this.firstByteDelay);
+                if (this.status != 200 || (range != null && range.equals(this.failRange))) {
+                    exchange.sendResponseHeaders(this.status != 200 ? this.status : 500, -1);
+                    return;
+                }
+
+                long start = 0;
+                long end = this.data.length - 1;
+                if (this.acceptRanges) {
+                    exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+                }
+                if (this.acceptRanges && range != null && range.startsWith("bytes=")) {
+                    final String[] bounds = range.substring("bytes=".length()).split("-", -1);
+                    start = Long.parseLong(bounds[0]);
+                    if (!bounds[1].isEmpty()) {
+                        end = Long.parseLong(bounds[1]);
+                    }
+                    exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + this.data.length);
+                    exchange.sendResponseHeaders(206, end + 1 - start);
+                } else {
+                    exchange.sendResponseHeaders(200, this.data.length);
+                }
+
+                final OutputStream out = exchange.getResponseBody();
+                for (long position = start; position <= end; ) {
+                    if (position == start + this.stallAfter) {
+                        // Longer than the stall timeout, the client gives up on this mirror meanwhile
+                        Thread.sleep(10_000);
+                    }
+                    final long limit = this.stallAfter >= 0 && position < start + this.stallAfter ? start + this.stallAfter : end + 1;
+                    final int length = (int) Math.min(PIECE_SIZE, limit - position);
+                    out.write(this.data, (int) position, length);
+                    out.flush();
+                    position += length;
+                }
+                this.completed.incrementAndGet();
+            } catch (final IOException e) {
+                this.aborted.countDown();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package dev.menthamc.lightclip;
+
+import org.leavesmc.leavesclip.mixin.AccessWidenerManager;
+import org.leavesmc.leavesclip.mixin.MixinJarResolver;
+import org.leavesmc.leavesclip.mixin.MixinTargetIndex;
+import org.spongepowered.asm.mixin.Mixins;
+
+import java.net.URL;
+import java.util.List;
+
+// Mixin with test configs, which can only be bootstrapped once per JVM
+final class MixinFixture {
+
+    static final URL TEST_CLASSES = MixinFixture.class.getProtectionDomain().getCodeSource().getLocation();
+
+    private static MixinTargetIndex targetIndex;
+
+    private MixinFixture() {}
+
+    // The configs leave Mixins#getConfigs once they are selected, so the index is made before anything is transformed
+    static synchronized MixinTargetIndex bootstrap(final String... configs) {
+        if (targetIndex == null) {
+            MixinJarResolver.mixinConfigs = List.of(configs);
+            Lightclip.bootstrapMixin();
+            AccessWidenerManager.initAccessWidener(Lightclip.createMixinClassLoader(new URL[]{TEST_CLASSES}));
+            targetIndex = new MixinTargetIndex(Mixins.getConfigs());
+        }
+        return targetIndex;
+    }
+
+    // Hides the given packages, so a class loader below it defines them from its own class path
+    static ClassLoader hiding(final String... packages) {
+        return new ClassLoader(MixinFixture.class.getClassLoader()) {
+            @Override
+            protected Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
+                for (final String prefix : packages) {
+                    if (name.startsWith(prefix)) {
+                        throw new ClassNotFoundException(name);
+                    }
+                }
+                return super.loadClass(name, resolve);
+            }
+        };
+    }
+}
@@ -0,0 +1,41 @@
+package dev.menthamc.lightclip;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+// The target index must not settle on the targets of a config before Mixin prepared it, see TargetIndexBoot
+@Timeout(120)
+class MixinTargetIndexTest {
+
+    @Test
+    void appliesConfigsWithPluginsAndConfigsAddedLater() throws IOException, InterruptedException {
+        final Process process = new ProcessBuilder(
+            Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+            "-cp", System.getProperty("java.class.path"),
+            TargetIndexBoot.class.getName()
+        ).redirectErrorStream(true).start();
+        final String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertEquals(0, process.waitFor(), output);
+
+        // The plugin is loaded while its config is selected, the mixed class is loaded after that
+        assertEquals("world hello", line(output, TargetIndexBoot.GREETING));
+        // The late config is selected while a class it doesn't target loads
+        assertEquals("2", line(output, TargetIndexBoot.COUNTER));
+    }
+
+    private static String line(final String output, final String prefix) {
+        for (final String line : output.split("\\R")) {
+            if (line.startsWith(prefix)) {
+                return line.substring(prefix.length());
+            }
+        }
+        return fail("No line starting with " + prefix + " in\n" + output);
+    }
+}
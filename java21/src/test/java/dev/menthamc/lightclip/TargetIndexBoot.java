@@ -0,0 +1,40 @@
+package dev.menthamc.lightclip;
+
+import dev.menthamc.lightclip.test.target.Bystander;
+import dev.menthamc.lightclip.test.target.Counter;
+import dev.menthamc.lightclip.test.target.Greeter;
+import dev.menthamc.lightclip.test.target.Plain;
+import org.leavesmc.leavesclip.mixin.MixinServiceKnot;
+import org.leavesmc.leavesclip.mixin.MixinURLClassLoader;
+import org.spongepowered.asm.mixin.Mixins;
+
+import java.net.URL;
+
+// Run by MixinTargetIndexTest in a JVM of its own, so the first transformation is the one that selects the configs.
+// Prints what the targets of a config with a plugin, and of a config added afterwards, return once loaded
+final class TargetIndexBoot {
+
+    static final String GREETING = "greeting: ";
+    static final String COUNTER = "counter: ";
+
+    private TargetIndexBoot() {}
+
+    public static void main(final String[] args) throws Exception {
+        final MixinURLClassLoader classLoader = new MixinURLClassLoader(
+            new URL[]{MixinFixture.TEST_CLASSES},
+            MixinFixture.hiding("dev.menthamc.lightclip.test.")
+        );
+        classLoader.setTargetIndex(MixinFixture.bootstrap("lightclip-plugin-test.mixins.json"));
+        // Mixin loads the config plugin through its service, which then asks the class loader under test
+        MixinServiceKnot.classLoader = classLoader;
+
+        classLoader.loadClass(Plain.class.getName());
+        final Class<?> greeter = classLoader.loadClass(Greeter.class.getName());
+        System.out.println(GREETING + greeter.getMethod("greet").invoke(greeter.getConstructor().newInstance()));
+
+        Mixins.addConfiguration("lightclip-late-test.mixins.json");
+        classLoader.loadClass(Bystander.class.getName());
+        final Class<?> counter = classLoader.loadClass(Counter.class.getName());
+        System.out.println(COUNTER + counter.getMethod("value").invoke(counter.getConstructor().newInstance()));
+    }
+}
@@ -0,0 +1,16 @@
+package dev.menthamc.lightclip.test.late;
+
+import dev.menthamc.lightclip.test.target.Counter;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+@Mixin(Counter.class)
+public abstract class CounterMixin {
+
+    @Inject(method = "value", at = @At("RETURN"), cancellable = true)
+    private void lightclip$value(final CallbackInfoReturnable<Integer> cir) {
+        cir.setReturnValue(cir.getReturnValue() + 1);
+    }
+}
@@ -0,0 +1,22 @@
+package dev.menthamc.lightclip.test.mixin;
+
+import dev.menthamc.lightclip.test.target.Greeter;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.ModifyArgs;
+import org.spongepowered.asm.mixin.injection.invoke.arg.Args;
+
+// @ModifyArgs makes Mixin generate a synthetic Args subclass for the call, which only it can define
+@Mixin(Greeter.class)
+public abstract class GreeterMixin {
+
+    @ModifyArgs(
+        method = "greet",
+        at = @At(value = "INVOKE", target = "Ldev/menthamc/lightclip/test/target/Greeter;join(Ljava/lang/String;Ljava/lang/String;)Ljava/lang/String;")
+    )
+    private void lightclip$swap(final Args args) {
+        final String first = args.get(0);
+        args.set(0, args.get(1));
+        args.set(1, first);
+    }
+}
@@ -0,0 +1,4 @@
+package dev.menthamc.lightclip.test.target;
+
+public class Bystander {
+}
@@ -0,0 +1,8 @@
+package dev.menthamc.lightclip.test.target;
+
+public class Counter {
+
+    public int value() {
+        return 1;
+    }
+}
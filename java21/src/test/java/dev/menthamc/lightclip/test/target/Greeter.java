@@ -0,0 +1,12 @@
+package dev.menthamc.lightclip.test.target;
+
+public class Greeter {
+
+    public String greet() {
+        return join("hello", "world");
+    }
+
+    private static String join(final String first, final String second) {
+        return first + " " + second;
+    }
+}
@@ -0,0 +1,9 @@
+package dev.menthamc.lightclip.test.target;
+
+public class Plain {
+
+    @Override
+    public String toString() {
+        return "plain";
+    }
+}